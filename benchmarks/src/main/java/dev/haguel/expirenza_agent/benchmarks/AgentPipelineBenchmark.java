@@ -0,0 +1,122 @@
+package dev.haguel.expirenza_agent.benchmarks;
+
+import dev.haguel.expirenza_agent.cluster.ShardCoordinator;
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import dev.haguel.expirenza_agent.main.DataExporter;
+import dev.haguel.expirenza_agent.main.ItemParser;
+import dev.haguel.expirenza_agent.main.ItemProducer;
+import dev.haguel.expirenza_agent.main.impl.Agent;
+import dev.haguel.expirenza_agent.main.impl.CrawlScheduler;
+import dev.haguel.expirenza_agent.metrics.AgentMetrics;
+import dev.haguel.expirenza_agent.store.MenuFingerprintStore;
+import dev.haguel.expirenza_agent.store.MenuSnapshotLog;
+import dev.haguel.expirenza_agent.utils.ExecutionMode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Drives the queues and consumers with in-memory stages, so the number reflects pipeline overhead rather than I/O
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AgentPipelineBenchmark {
+
+    @Param({"10000"})
+    private int restaurants;
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    private ExecutionMode executionMode;
+
+    private List<Dish> dishes;
+    private Agent agent;
+    private MenuSnapshotLog menuSnapshotLog;
+    private MenuFingerprintStore menuFingerprintStore;
+    private CountDownLatch exported;
+
+    @Setup(Level.Trial)
+    public void setupMenu() {
+        dishes = MenuFixtures.dishes("Category", 20);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupAgent() throws ReflectiveOperationException, IOException {
+        exported = new CountDownLatch(restaurants);
+
+        AgentMetrics agentMetrics = new AgentMetrics(new SimpleMeterRegistry());
+        // Clustering is off, so every URL falls into the single local shard
+        ShardCoordinator shardCoordinator = new ShardCoordinator(agentMetrics);
+        CrawlScheduler crawlScheduler = new CrawlScheduler(shardCoordinator);
+        setField(crawlScheduler, "minIntervalSeconds", 60L);
+        setField(crawlScheduler, "initialIntervalSeconds", 180L);
+        setField(crawlScheduler, "maxIntervalSeconds", 3600L);
+        setField(crawlScheduler, "retryDelaySeconds", 60L);
+
+        ItemParser<String, Restaurant> parser = url -> Restaurant.builder().url(url).name(url).dishes(dishes).build();
+        DataExporter<Restaurant> exporter = restaurant -> exported.countDown();
+
+        menuSnapshotLog = new MenuSnapshotLog();
+        setField(menuSnapshotLog, "path", Files.createTempDirectory("expirenza-bench").resolve("menu-snapshots").toString());
+        setField(menuSnapshotLog, "segmentSizeMb", 64);
+        setField(menuSnapshotLog, "maxSizeMb", 1024);
+        menuSnapshotLog.init();
+
+        menuFingerprintStore = new MenuFingerprintStore();
+        setField(menuFingerprintStore, "path", Files.createTempDirectory("expirenza-bench").resolve("menu-fingerprints.mv.db").toString());
+        menuFingerprintStore.init();
+
+        agent = new Agent(exporter, parser, crawlScheduler, new CountingProducer(restaurants), agentMetrics,
+                menuSnapshotLog, shardCoordinator, menuFingerprintStore);
+        setField(agent, "executionMode", executionMode);
+        setField(agent, "urlQueueCapacity", 1000);
+        setField(agent, "restaurantQueueCapacity", 100);
+        setField(agent, "parserConsumers", 0);
+        setField(agent, "exporterConsumers", 0);
+        setField(agent, "producerBatchSize", 500);
+        setField(agent, "shutdownTimeoutSeconds", 30L);
+        agent.init();
+    }
+
+    @TearDown(Level.Invocation)
+    public void shutdownAgent() throws IOException {
+        agent.shutdown();
+        menuSnapshotLog.cleanup();
+        menuFingerprintStore.cleanup();
+    }
+
+    @Benchmark
+    public void crawlAll() throws InterruptedException {
+        // Stands in for the scheduler ticks, just much more often than crawl.tickMillis
+        do {
+            agent.schedule();
+        } while (!exported.await(1, TimeUnit.MILLISECONDS));
+    }
+
+    private static void setField(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private static class CountingProducer extends ItemProducer<Integer, String> {
+        private int produced;
+
+        CountingProducer(int count) {
+            super(count);
+        }
+
+        @Override
+        public String produce() {
+            return produced < dataSource ? "https://expirenza.menu/restaurant-" + produced++ : null;
+        }
+    }
+}
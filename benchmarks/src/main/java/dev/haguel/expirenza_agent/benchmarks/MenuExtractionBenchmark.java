@@ -0,0 +1,59 @@
+package dev.haguel.expirenza_agent.benchmarks;
+
+import dev.haguel.expirenza_agent.benchmarks.MenuFixtures.MenuSize;
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.main.impl.MenuPageExtractor;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MenuExtractionBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    private MenuSize size;
+
+    private final MenuPageExtractor extractor = new MenuPageExtractor();
+
+    private String html;
+    private Document document;
+    private Elements dishElements;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        html = MenuFixtures.categoryPage("Benchmark Bistro", size, 42);
+        document = Jsoup.parse(html, "https://expirenza.menu/");
+        dishElements = document.select("div.menu-list-item");
+    }
+
+    // What a category page costs end to end once its HTML is in memory
+    @Benchmark
+    public List<Dish> parseAndExtract() {
+        return extractor.extractDishes(Jsoup.parse(html, "https://expirenza.menu/"), "Category");
+    }
+
+    @Benchmark
+    public Document parseOnly() {
+        return Jsoup.parse(html, "https://expirenza.menu/");
+    }
+
+    // Subcategory grouping plus per-dish extraction on an already parsed page
+    @Benchmark
+    public List<Dish> extractDishes() {
+        return extractor.extractDishes(document, "Category");
+    }
+
+    @Benchmark
+    public List<Dish> extractDishesFromElements() {
+        return extractor.extractDishesFromElements(dishElements, "Category", "Subcategory");
+    }
+}
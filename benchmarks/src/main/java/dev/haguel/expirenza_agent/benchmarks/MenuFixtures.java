@@ -0,0 +1,105 @@
+package dev.haguel.expirenza_agent.benchmarks;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.DishCategory;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Generates menu pages with the same markup the extractor targets, so runs are repeatable without network access
+public final class MenuFixtures {
+    private static final String[] PRICE_FORMATS = {"%d ₴", "%d.50 грн", "%d,90", "1 %03d ₴", "від %d грн"};
+
+    public enum MenuSize {
+        SMALL(1, 10),
+        MEDIUM(5, 40),
+        HUGE(40, 250);
+
+        public final int subCategories;
+        public final int dishesPerSubCategory;
+
+        MenuSize(int subCategories, int dishesPerSubCategory) {
+            this.subCategories = subCategories;
+            this.dishesPerSubCategory = dishesPerSubCategory;
+        }
+    }
+
+    private MenuFixtures() {}
+
+    public static String restaurantPage(String restaurantName, List<String> categoryUrls) {
+        StringBuilder html = new StringBuilder(256 + categoryUrls.size() * 96);
+        html.append("<html><head><title>").append(restaurantName).append("</title></head><body>\n");
+        html.append("<h2 class=\"title\">").append(restaurantName).append("</h2>\n<nav>\n");
+        for (int i = 0; i < categoryUrls.size(); i++) {
+            html.append("<a class=\"main-menu-item\" href=\"").append(categoryUrls.get(i)).append("\">Category ").append(i).append("</a>\n");
+        }
+        html.append("</nav>\n</body></html>\n");
+        return html.toString();
+    }
+
+    public static String categoryPage(String restaurantName, MenuSize size, long seed) {
+        return categoryPage(restaurantName, size.subCategories, size.dishesPerSubCategory, seed);
+    }
+
+    public static String categoryPage(String restaurantName, int subCategories, int dishesPerSubCategory, long seed) {
+        Random random = new Random(seed);
+        StringBuilder html = new StringBuilder(512 + subCategories * dishesPerSubCategory * 320);
+        html.append("<html><head><title>").append(restaurantName).append("</title></head><body>\n");
+        html.append("<h2 class=\"title\">").append(restaurantName).append("</h2>\n<div class=\"menu\">\n");
+
+        for (int s = 0; s < subCategories; s++) {
+            html.append("<h2 class=\"dish-list--title\">Subcategory ").append(s).append("</h2>\n");
+            html.append("<div class=\"dish-list\">\n");
+            for (int d = 0; d < dishesPerSubCategory; d++) {
+                html.append("<div class=\"menu-list-item\">")
+                        .append("<div class=\"item-image\"><img src=\"/img/").append(s).append('-').append(d).append(".jpg\"></div>")
+                        .append("<h4 class=\"item-title\">Dish ").append(seed).append('-').append(s).append('-').append(d).append("</h4>")
+                        .append("<div class=\"item-description\"><p>Fresh ingredients, house sauce and a side of ")
+                        .append(random.nextInt(1000)).append(" grams</p></div>")
+                        .append("<div class=\"price\">").append(price(random)).append("</div>")
+                        .append("</div>\n");
+            }
+            html.append("</div>\n");
+        }
+        html.append("</div>\n</body></html>\n");
+        return html.toString();
+    }
+
+    public static String[] prices(int count, long seed) {
+        Random random = new Random(seed);
+        String[] prices = new String[count];
+        for (int i = 0; i < count; i++) {
+            prices[i] = price(random);
+        }
+        return prices;
+    }
+
+    public static List<Dish> dishes(String category, int count) {
+        List<Dish> dishes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            dishes.add(Dish.builder()
+                    .name("Dish " + i)
+                    .dishCategory(DishCategory.builder().category(category).subCategory("Subcategory " + i % 20).build())
+                    .description("Fresh ingredients, house sauce and a side of " + i + " grams")
+                    .price(BigDecimal.valueOf(100 + i % 900))
+                    .build());
+        }
+        return dishes;
+    }
+
+    // Columns A:C as the Sheets API returns them for the sheet of dishes(category, rows): a header, then one row per dish
+    public static List<List<Object>> dishKeyColumns(String category, int rows) {
+        List<List<Object>> values = new ArrayList<>(rows + 1);
+        values.add(List.of("Category", "SubCategory", "Name"));
+        for (int i = 0; i < rows; i++) {
+            values.add(List.of(category, "Subcategory " + i % 20, "Dish " + i));
+        }
+        return values;
+    }
+
+    private static String price(Random random) {
+        return String.format(PRICE_FORMATS[random.nextInt(PRICE_FORMATS.length)], 10 + random.nextInt(990));
+    }
+}
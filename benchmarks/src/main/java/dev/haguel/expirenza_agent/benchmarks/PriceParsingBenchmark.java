@@ -0,0 +1,33 @@
+package dev.haguel.expirenza_agent.benchmarks;
+
+import dev.haguel.expirenza_agent.main.impl.MenuPageExtractor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PriceParsingBenchmark {
+    private static final int PRICE_COUNT = 1024;
+
+    private final MenuPageExtractor extractor = new MenuPageExtractor();
+    private String[] prices;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        prices = MenuFixtures.prices(PRICE_COUNT, 42);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PRICE_COUNT)
+    public void parsePrice(Blackhole blackhole) {
+        for (String price : prices) {
+            blackhole.consume(extractor.parsePrice(price));
+        }
+    }
+}
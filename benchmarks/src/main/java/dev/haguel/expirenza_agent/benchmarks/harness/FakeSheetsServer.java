@@ -0,0 +1,384 @@
+package dev.haguel.expirenza_agent.benchmarks.harness;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+// In-memory stand-in for the subset of the Sheets v4 API the exporter uses, plus an OAuth token endpoint
+public class FakeSheetsServer implements AutoCloseable {
+    private static final String JSON = "application/json; charset=UTF-8";
+    private static final String SPREADSHEETS_PATH = "/v4/spreadsheets/";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final FaultInjector faults;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Map<String, FakeSheet> sheetsByTitle = new LinkedHashMap<>();
+    private final Map<String, AtomicLong> callsByOperation = new ConcurrentHashMap<>();
+    private final AtomicLong writtenRows = new AtomicLong();
+    private int nextSheetId = 1;
+
+    private static class FakeSheet {
+        private final int sheetId;
+        private final String title;
+        private int rowCount;
+        private int valueWrites;
+        private final Map<Integer, List<String>> rows = new HashMap<>();
+
+        private FakeSheet(int sheetId, String title, int rowCount) {
+            this.sheetId = sheetId;
+            this.title = title;
+            this.rowCount = rowCount;
+        }
+    }
+
+    private record CellRange(String sheetName, int column, int lastColumn, int row) {}
+
+    private static class BadRequestException extends RuntimeException {
+        private BadRequestException(String message) {
+            super(message);
+        }
+    }
+
+    public FakeSheetsServer(FaultInjector faults) throws IOException {
+        this.faults = faults;
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getRootUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    public String getTokenUrl() {
+        return getRootUrl() + "token";
+    }
+
+    public FaultInjector getFaults() {
+        return faults;
+    }
+
+    // Sheets that received at least one row, i.e. restaurants whose export went all the way through
+    public synchronized int getPopulatedSheetCount() {
+        return (int) sheetsByTitle.values().stream().filter(sheet -> !sheet.rows.isEmpty()).count();
+    }
+
+    // Sheets written by more than one values.batchUpdate; a single crawl round of a cluster should leave none
+    public synchronized int getRewrittenSheetCount() {
+        return (int) sheetsByTitle.values().stream().filter(sheet -> sheet.valueWrites > 1).count();
+    }
+
+    public long getWrittenRows() {
+        return writtenRows.get();
+    }
+
+    public Map<String, Long> getCallsByOperation() {
+        Map<String, Long> calls = new TreeMap<>();
+        callsByOperation.forEach((operation, count) -> calls.put(operation, count.get()));
+        return calls;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            if ("/token".equals(path)) {
+                readBody(exchange).readAllBytes();
+                respond(exchange, objectMapper.createObjectNode()
+                        .put("access_token", "harness-token")
+                        .put("token_type", "Bearer")
+                        .put("expires_in", 3600));
+                return;
+            }
+            if (!path.startsWith(SPREADSHEETS_PATH)) {
+                FaultInjector.respondError(exchange, 404, "NOT_FOUND", "Unknown path " + path);
+                return;
+            }
+
+            String operation = operation(exchange.getRequestMethod(), path.substring(SPREADSHEETS_PATH.length()));
+            callsByOperation.computeIfAbsent(operation, key -> new AtomicLong()).incrementAndGet();
+            if (faults.intercept(exchange)) {
+                return;
+            }
+
+            try {
+                JsonNode response = switch (operation) {
+                    case "spreadsheets.get" -> getSpreadsheet();
+                    case "spreadsheets.batchUpdate" -> batchUpdate(readJson(exchange));
+                    case "values.batchGet" -> batchGetValues(queryParameters(exchange).getOrDefault("ranges", List.of()));
+                    case "values.batchUpdate" -> batchUpdateValues(readJson(exchange));
+                    default -> throw new BadRequestException("Unsupported operation " + operation);
+                };
+                respond(exchange, response);
+            } catch (BadRequestException e) {
+                FaultInjector.respondError(exchange, 400, "INVALID_ARGUMENT", e.getMessage().replace("\"", "'"));
+            }
+        }
+    }
+
+    private static String operation(String method, String spreadsheetPath) {
+        if (spreadsheetPath.endsWith("/values:batchGet")) {
+            return "values.batchGet";
+        }
+        if (spreadsheetPath.endsWith("/values:batchUpdate")) {
+            return "values.batchUpdate";
+        }
+        if (spreadsheetPath.endsWith(":batchUpdate")) {
+            return "spreadsheets.batchUpdate";
+        }
+        if ("GET".equals(method) && !spreadsheetPath.contains("/")) {
+            return "spreadsheets.get";
+        }
+        return method + " " + spreadsheetPath;
+    }
+
+    private synchronized JsonNode getSpreadsheet() {
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode sheets = response.putArray("sheets");
+        for (FakeSheet sheet : sheetsByTitle.values()) {
+            sheets.addObject().set("properties", properties(sheet));
+        }
+        return response;
+    }
+
+    // Structural requests are validated as a whole first, since the real API applies a batch atomically
+    private synchronized JsonNode batchUpdate(JsonNode body) {
+        Set<String> addedTitles = new HashSet<>();
+        for (JsonNode request : body.path("requests")) {
+            if (request.has("addSheet")) {
+                String title = request.path("addSheet").path("properties").path("title").asText();
+                if (sheetsByTitle.containsKey(title) || !addedTitles.add(title)) {
+                    throw new BadRequestException("A sheet with the name " + title + " already exists");
+                }
+            } else if (request.has("appendDimension")) {
+                int sheetId = request.path("appendDimension").path("sheetId").asInt();
+                if (findSheet(sheetId) == null) {
+                    throw new BadRequestException("No grid with id: " + sheetId);
+                }
+            } else {
+                throw new BadRequestException("Unsupported request " + request.fieldNames().next());
+            }
+        }
+
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode replies = response.putArray("replies");
+        for (JsonNode request : body.path("requests")) {
+            if (request.has("addSheet")) {
+                JsonNode properties = request.path("addSheet").path("properties");
+                FakeSheet sheet = new FakeSheet(nextSheetId++, properties.path("title").asText(),
+                        properties.path("gridProperties").path("rowCount").asInt(1000));
+                sheetsByTitle.put(sheet.title, sheet);
+                replies.addObject().putObject("addSheet").set("properties", properties(sheet));
+            } else {
+                JsonNode append = request.path("appendDimension");
+                findSheet(append.path("sheetId").asInt()).rowCount += append.path("length").asInt();
+                replies.addObject();
+            }
+        }
+        return response;
+    }
+
+    private synchronized JsonNode batchGetValues(List<String> ranges) {
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode valueRanges = response.putArray("valueRanges");
+        for (String range : ranges) {
+            CellRange cellRange = parseRange(range);
+            FakeSheet sheet = requireSheet(cellRange.sheetName());
+
+            ObjectNode valueRange = valueRanges.addObject().put("range", range).put("majorDimension", "ROWS");
+            int lastRow = 0;
+            for (Map.Entry<Integer, List<String>> row : sheet.rows.entrySet()) {
+                if (lastNonEmptyColumn(row.getValue(), cellRange) >= cellRange.column()) {
+                    lastRow = Math.max(lastRow, row.getKey());
+                }
+            }
+            if (lastRow == 0) {
+                continue;
+            }
+
+            // Like the real API, empty cells inside a row come back as "" and trailing ones are left out
+            ArrayNode values = valueRange.putArray("values");
+            for (int i = 1; i <= lastRow; i++) {
+                ArrayNode row = values.addArray();
+                List<String> cells = sheet.rows.get(i);
+                int lastColumn = lastNonEmptyColumn(cells, cellRange);
+                for (int column = cellRange.column(); column <= lastColumn; column++) {
+                    row.add(cell(cells, column));
+                }
+            }
+        }
+        return response;
+    }
+
+    private synchronized JsonNode batchUpdateValues(JsonNode body) {
+        for (JsonNode data : body.path("data")) {
+            CellRange start = parseRange(data.path("range").asText());
+            FakeSheet sheet = requireSheet(start.sheetName());
+            int lastRow = start.row() + data.path("values").size() - 1;
+            if (lastRow > sheet.rowCount) {
+                throw new BadRequestException("Range (" + data.path("range").asText() + ") exceeds grid limits. Max rows: " + sheet.rowCount);
+            }
+        }
+
+        int updatedRows = 0;
+        Set<FakeSheet> writtenSheets = new HashSet<>();
+        for (JsonNode data : body.path("data")) {
+            CellRange start = parseRange(data.path("range").asText());
+            FakeSheet sheet = requireSheet(start.sheetName());
+            if (writtenSheets.add(sheet)) {
+                sheet.valueWrites++;
+            }
+            int rowIndex = start.row();
+            for (JsonNode values : data.path("values")) {
+                writeRow(sheet, rowIndex++, start.column(), values);
+                updatedRows++;
+            }
+        }
+        writtenRows.addAndGet(updatedRows);
+        return objectMapper.createObjectNode().put("totalUpdatedRows", updatedRows);
+    }
+
+    private static void writeRow(FakeSheet sheet, int rowIndex, int column, JsonNode values) {
+        List<String> row = new ArrayList<>(sheet.rows.getOrDefault(rowIndex, List.of()));
+        for (int i = 0; i < values.size(); i++) {
+            while (row.size() <= column + i) {
+                row.add("");
+            }
+            row.set(column + i, values.get(i).asText());
+        }
+
+        if (row.stream().allMatch(String::isEmpty)) {
+            sheet.rows.remove(rowIndex);
+        } else {
+            sheet.rows.put(rowIndex, row);
+        }
+    }
+
+    private static int lastNonEmptyColumn(List<String> row, CellRange cellRange) {
+        for (int column = cellRange.lastColumn(); column >= cellRange.column(); column--) {
+            if (!cell(row, column).isEmpty()) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    private static String cell(List<String> row, int column) {
+        return row != null && column < row.size() ? row.get(column) : "";
+    }
+
+    private FakeSheet findSheet(int sheetId) {
+        return sheetsByTitle.values().stream().filter(sheet -> sheet.sheetId == sheetId).findFirst().orElse(null);
+    }
+
+    private FakeSheet requireSheet(String title) {
+        FakeSheet sheet = sheetsByTitle.get(title);
+        if (sheet == null) {
+            throw new BadRequestException("Unable to parse range: " + title);
+        }
+        return sheet;
+    }
+
+    private ObjectNode properties(FakeSheet sheet) {
+        ObjectNode properties = objectMapper.createObjectNode()
+                .put("sheetId", sheet.sheetId)
+                .put("title", sheet.title);
+        properties.putObject("gridProperties").put("rowCount", sheet.rowCount).put("columnCount", 26);
+        return properties;
+    }
+
+    // Handles the A1 forms the exporter sends: 'Sheet'!A5:E9 and 'Sheet'!A:C. Writes only need the top-left cell.
+    private static CellRange parseRange(String range) {
+        int separator = range.lastIndexOf('!');
+        if (separator < 0) {
+            throw new BadRequestException("Unable to parse range: " + range);
+        }
+
+        String sheetName = range.substring(0, separator);
+        if (sheetName.length() >= 2 && sheetName.startsWith("'") && sheetName.endsWith("'")) {
+            sheetName = sheetName.substring(1, sheetName.length() - 1).replace("''", "'");
+        }
+
+        String cells = range.substring(separator + 1);
+        int end = cells.indexOf(':');
+        String first = end < 0 ? cells : cells.substring(0, end);
+        int column = columnNumber(first);
+        int letters = columnLetters(first);
+        int row = letters < first.length() ? Integer.parseInt(first.substring(letters)) : 1;
+        int lastColumn = end < 0 ? column : columnNumber(cells.substring(end + 1));
+        return new CellRange(sheetName, column - 1, lastColumn - 1, row);
+    }
+
+    private static int columnNumber(String cell) {
+        int column = 0;
+        for (int i = 0; i < columnLetters(cell); i++) {
+            column = column * 26 + (Character.toUpperCase(cell.charAt(i)) - 'A' + 1);
+        }
+        return column;
+    }
+
+    private static int columnLetters(String cell) {
+        int i = 0;
+        while (i < cell.length() && Character.isLetter(cell.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static Map<String, List<String>> queryParameters(HttpExchange exchange) {
+        Map<String, List<String>> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            parameters.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+        }
+        return parameters;
+    }
+
+    private JsonNode readJson(HttpExchange exchange) throws IOException {
+        try (InputStream body = readBody(exchange)) {
+            return objectMapper.readTree(body);
+        }
+    }
+
+    // The Google client gzips request bodies by default
+    private static InputStream readBody(HttpExchange exchange) throws IOException {
+        InputStream body = exchange.getRequestBody();
+        return "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding")) ? new GZIPInputStream(body) : body;
+    }
+
+    private void respond(HttpExchange exchange, JsonNode body) throws IOException {
+        FaultInjector.respond(exchange, 200, JSON, objectMapper.writeValueAsBytes(body));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
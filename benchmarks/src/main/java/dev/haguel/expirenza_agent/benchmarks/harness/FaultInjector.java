@@ -0,0 +1,106 @@
+package dev.haguel.expirenza_agent.benchmarks.harness;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Adds latency, random server errors and a per-minute quota in front of a stand-in endpoint
+public class FaultInjector {
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double errorRate;
+    private final int quotaPerMinute;
+
+    private double quotaTokens;
+    private long quotaRefilledAtNanos = System.nanoTime();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    public FaultInjector(long latencyMillis, long jitterMillis, double errorRate, int quotaPerMinute) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.errorRate = errorRate;
+        this.quotaPerMinute = quotaPerMinute;
+        this.quotaTokens = quotaPerMinute;
+    }
+
+    public static FaultInjector none() {
+        return new FaultInjector(0, 0, 0, 0);
+    }
+
+    // Returns true when the exchange was already answered with an injected failure
+    public boolean intercept(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        sleep();
+
+        if (!tryAcquireQuota()) {
+            throttled.incrementAndGet();
+            respondError(exchange, 429, "RESOURCE_EXHAUSTED", "Quota exceeded for quota metric 'Requests' per minute");
+            return true;
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            injectedErrors.incrementAndGet();
+            respondError(exchange, 500, "INTERNAL", "Injected failure");
+            return true;
+        }
+        return false;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    private synchronized boolean tryAcquireQuota() {
+        if (quotaPerMinute <= 0) {
+            return true;
+        }
+
+        long now = System.nanoTime();
+        quotaTokens = Math.min(quotaPerMinute, quotaTokens + (now - quotaRefilledAtNanos) * quotaPerMinute / 60e9);
+        quotaRefilledAtNanos = now;
+        if (quotaTokens < 1) {
+            return false;
+        }
+        quotaTokens--;
+        return true;
+    }
+
+    private void sleep() {
+        long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (delay <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Same error envelope as Google APIs, so clients parse it the way they would in production
+    static void respondError(HttpExchange exchange, int code, String status, String message) throws IOException {
+        String body = "{\"error\":{\"code\":" + code + ",\"message\":\"" + message + "\",\"status\":\"" + status + "\"}}";
+        respond(exchange, code, "application/json; charset=UTF-8", body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void respond(HttpExchange exchange, int code, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+        try (var output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+}
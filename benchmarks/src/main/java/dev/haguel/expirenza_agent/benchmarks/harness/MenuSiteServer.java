@@ -0,0 +1,158 @@
+package dev.haguel.expirenza_agent.benchmarks.harness;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.haguel.expirenza_agent.benchmarks.MenuFixtures;
+import dev.haguel.expirenza_agent.benchmarks.MenuFixtures.MenuSize;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Serves a sitemap, restaurant pages and category pages for a fixed number of synthetic restaurants. With conditional
+// responses on, pages carry an ETag and a matching If-None-Match is answered with 304 Not Modified.
+public class MenuSiteServer implements AutoCloseable {
+    private static final String HTML = "text/html; charset=UTF-8";
+
+    private final int restaurants;
+    private final int categoriesPerRestaurant;
+    private final MenuSize menuSize;
+    private final FaultInjector faults;
+    private final boolean conditionalResponses;
+
+    private final AtomicLong restaurantPageRequests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public MenuSiteServer(int restaurants, int categoriesPerRestaurant, MenuSize menuSize, FaultInjector faults,
+                          boolean conditionalResponses) throws IOException {
+        this.restaurants = restaurants;
+        this.categoriesPerRestaurant = categoriesPerRestaurant;
+        this.menuSize = menuSize;
+        this.faults = faults;
+        this.conditionalResponses = conditionalResponses;
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String getSitemapUrl() {
+        return getBaseUrl() + "/sitemap.xml";
+    }
+
+    public String getRestaurantUrlPattern() {
+        return "http://127\\.0\\.0\\.1:" + server.getAddress().getPort() + "/r/\\d+";
+    }
+
+    public FaultInjector getFaults() {
+        return faults;
+    }
+
+    public long getRestaurantPageRequests() {
+        return restaurantPageRequests.get();
+    }
+
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    public static String restaurantName(int restaurant) {
+        return "Harness Restaurant " + restaurant;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            if ("/sitemap.xml".equals(path)) {
+                FaultInjector.respond(exchange, 200, "application/xml; charset=UTF-8", sitemap());
+                return;
+            }
+            if (faults.intercept(exchange)) {
+                return;
+            }
+
+            String[] segments = path.split("/");
+            int restaurant = segments.length >= 3 && "r".equals(segments[1]) ? parseIndex(segments[2], restaurants) : -1;
+            if (restaurant < 0) {
+                FaultInjector.respond(exchange, 404, HTML, new byte[0]);
+            } else if (segments.length == 3) {
+                restaurantPageRequests.incrementAndGet();
+                respondPage(exchange, restaurantPage(restaurant));
+            } else if (segments.length == 5 && "c".equals(segments[3]) && parseIndex(segments[4], categoriesPerRestaurant) >= 0) {
+                int category = Integer.parseInt(segments[4]);
+                String page = MenuFixtures.categoryPage(restaurantName(restaurant), menuSize, (long) restaurant * categoriesPerRestaurant + category);
+                respondPage(exchange, page.getBytes(StandardCharsets.UTF_8));
+            } else {
+                FaultInjector.respond(exchange, 404, HTML, new byte[0]);
+            }
+        }
+    }
+
+    // Pages are generated from fixed seeds, so a hash of the body is a stable ETag
+    private void respondPage(HttpExchange exchange, byte[] page) throws IOException {
+        if (conditionalResponses) {
+            String etag = "\"" + Integer.toHexString(Arrays.hashCode(page)) + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                FaultInjector.respond(exchange, 304, HTML, new byte[0]);
+                return;
+            }
+        }
+        bytesServed.addAndGet(page.length);
+        FaultInjector.respond(exchange, 200, HTML, page);
+    }
+
+    private byte[] sitemap() {
+        StringBuilder xml = new StringBuilder(128 + restaurants * 64);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+        for (int i = 0; i < restaurants; i++) {
+            xml.append("<url><loc>").append(getBaseUrl()).append("/r/").append(i).append("</loc></url>\n");
+        }
+        xml.append("</urlset>\n");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] restaurantPage(int restaurant) {
+        List<String> categoryUrls = new ArrayList<>(categoriesPerRestaurant);
+        for (int i = 0; i < categoriesPerRestaurant; i++) {
+            categoryUrls.add(getBaseUrl() + "/r/" + restaurant + "/c/" + i);
+        }
+        return MenuFixtures.restaurantPage(restaurantName(restaurant), categoryUrls).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int parseIndex(String segment, int bound) {
+        try {
+            int index = Integer.parseInt(segment);
+            return index < bound ? index : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
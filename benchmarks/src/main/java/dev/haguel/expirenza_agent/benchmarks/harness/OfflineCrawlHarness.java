@@ -0,0 +1,208 @@
+package dev.haguel.expirenza_agent.benchmarks.harness;
+
+import dev.haguel.expirenza_agent.ExpirenzaCrawlerApplication;
+import dev.haguel.expirenza_agent.benchmarks.MenuFixtures.MenuSize;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+// Runs the whole application against a local menu site and a fake Sheets API until every synthetic restaurant is exported.
+// Harness options are name=value pairs; --name=value arguments are passed to Spring and override the harness wiring.
+// With nodes above 1 that many application contexts share the work as a cluster over an in-memory lease database.
+// With cycles above 1 restaurants are recrawled every second until each restaurant page was requested that many times.
+public class OfflineCrawlHarness {
+    private static final Map<String, String> DEFAULTS = Map.ofEntries(
+            Map.entry("restaurants", "1000"),
+            Map.entry("nodes", "1"),
+            Map.entry("cycles", "1"),
+            Map.entry("categories", "3"),
+            Map.entry("menuSize", "MEDIUM"),
+            Map.entry("siteLatencyMillis", "50"),
+            Map.entry("siteJitterMillis", "50"),
+            Map.entry("siteErrorRate", "0"),
+            Map.entry("siteEtags", "true"),
+            Map.entry("sheetsLatencyMillis", "150"),
+            Map.entry("sheetsJitterMillis", "100"),
+            Map.entry("sheetsErrorRate", "0"),
+            Map.entry("sheetsQuotaPerMinute", "0"),
+            Map.entry("reportSeconds", "5"),
+            Map.entry("timeoutSeconds", "900"));
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(DEFAULTS);
+        Map<String, String> springProperties = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                springProperties.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.contains("=") && DEFAULTS.containsKey(arg.substring(0, arg.indexOf('=')))) {
+                options.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg + ", expected one of " + DEFAULTS.keySet());
+            }
+        }
+
+        int restaurants = Integer.parseInt(options.get("restaurants"));
+        int nodes = Integer.parseInt(options.get("nodes"));
+        int cycles = Integer.parseInt(options.get("cycles"));
+        FaultInjector siteFaults = new FaultInjector(Long.parseLong(options.get("siteLatencyMillis")),
+                Long.parseLong(options.get("siteJitterMillis")), Double.parseDouble(options.get("siteErrorRate")), 0);
+        FaultInjector sheetsFaults = new FaultInjector(Long.parseLong(options.get("sheetsLatencyMillis")),
+                Long.parseLong(options.get("sheetsJitterMillis")), Double.parseDouble(options.get("sheetsErrorRate")),
+                Integer.parseInt(options.get("sheetsQuotaPerMinute")));
+
+        Path workDirectory = Files.createTempDirectory("expirenza-harness");
+        try (MenuSiteServer site = new MenuSiteServer(restaurants, Integer.parseInt(options.get("categories")),
+                     MenuSize.valueOf(options.get("menuSize")), siteFaults, Boolean.parseBoolean(options.get("siteEtags")));
+             FakeSheetsServer sheets = new FakeSheetsServer(sheetsFaults)) {
+
+            Path keyFile = HarnessServiceAccount.write(workDirectory, sheets.getTokenUrl());
+            Map<String, String> properties = new LinkedHashMap<>();
+            properties.put("google.sheets.rootUrl", sheets.getRootUrl());
+            properties.put("google.sheets.serviceAccountKeyPath", keyFile.toString());
+            properties.put("google.sheets.spreadsheetId", "harness");
+            properties.put("producer.source", "sitemap");
+            properties.put("producer.sitemap.url", site.getSitemapUrl());
+            properties.put("producer.sitemap.urlPattern", site.getRestaurantUrlPattern());
+            properties.put("webdriver.pool.warmUpSize", "0");
+            properties.put("crawl.tickMillis", "200");
+            if (cycles > 1) {
+                properties.put("crawl.minIntervalSeconds", "1");
+                properties.put("crawl.initialIntervalSeconds", "1");
+                properties.put("crawl.maxIntervalSeconds", "1");
+            }
+
+            List<List<String>> nodeArgs = new ArrayList<>();
+            for (int node = 1; node <= nodes; node++) {
+                Map<String, String> nodeProperties = new LinkedHashMap<>(properties);
+                // Local stores are per node, just like on separate machines
+                nodeProperties.put("store.fingerprints.path", workDirectory.resolve("menu-fingerprints-" + node + ".mv.db").toString());
+                nodeProperties.put("store.snapshots.path", workDirectory.resolve("menu-snapshots-" + node).toString());
+                nodeProperties.put("store.pageCache.path", workDirectory.resolve("page-cache-" + node).toString());
+                if (nodes > 1) {
+                    nodeProperties.put("cluster.enabled", "true");
+                    nodeProperties.put("cluster.nodeId", "harness-node-" + node);
+                    nodeProperties.put("cluster.jdbc.url", "jdbc:h2:mem:harness-cluster;DB_CLOSE_DELAY=-1");
+                    nodeProperties.put("cluster.heartbeatMillis", "1000");
+                    nodeProperties.put("cluster.leaseMillis", "5000");
+                    nodeProperties.put("spring.jmx.unique-names", "true");
+                }
+                nodeProperties.putAll(springProperties);
+                nodeArgs.add(nodeProperties.entrySet().stream()
+                        .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                        .toList());
+            }
+
+            run(restaurants, cycles, site, sheets, nodeArgs, Long.parseLong(options.get("reportSeconds")),
+                    Long.parseLong(options.get("timeoutSeconds")));
+        }
+    }
+
+    private static void run(int restaurants, int cycles, MenuSiteServer site, FakeSheetsServer sheets, List<List<String>> nodeArgs,
+                            long reportSeconds, long timeoutSeconds) throws InterruptedException {
+        long start = System.nanoTime();
+        List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+        List<MeterRegistry> registries = new ArrayList<>();
+        for (List<String> applicationArgs : nodeArgs) {
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(ExpirenzaCrawlerApplication.class)
+                    .run(applicationArgs.toArray(String[]::new));
+            contexts.add(context);
+            registries.add(context.getBean(MeterRegistry.class));
+        }
+        ConfigurableApplicationContext context = contexts.get(0);
+        // Queue capacities are per node, so fill is compared against the sum over all nodes
+        int urlCapacity = contexts.size() * context.getEnvironment().getProperty("agent.queue.urlCapacity", Integer.class, 1000);
+        int restaurantCapacity = contexts.size() * context.getEnvironment().getProperty("agent.queue.restaurantCapacity", Integer.class, 100);
+
+        double peakUrlDepth = 0;
+        double peakRestaurantDepth = 0;
+        long deadline = start + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        int exported;
+        while (((exported = sheets.getPopulatedSheetCount()) < restaurants || site.getRestaurantPageRequests() < (long) restaurants * cycles)
+                && System.nanoTime() < deadline) {
+            TimeUnit.SECONDS.sleep(reportSeconds);
+
+            double urlDepth = gauge(registries, "expirenza.queue.depth", "queue", "urls");
+            double restaurantDepth = gauge(registries, "expirenza.queue.depth", "queue", "restaurants");
+            peakUrlDepth = Math.max(peakUrlDepth, urlDepth);
+            peakRestaurantDepth = Math.max(peakRestaurantDepth, restaurantDepth);
+            System.out.printf("[harness] %6.1fs exported=%d/%d urlQueue=%.0f restaurantQueue=%.0f inflight=%.0f sheetsCalls=%d throttled=%d%n",
+                    seconds(start), sheets.getPopulatedSheetCount(), restaurants, urlDepth, restaurantDepth,
+                    gauge(registries, "expirenza.crawl.inflight", null, null),
+                    sheets.getFaults().getRequests(), sheets.getFaults().getThrottled());
+        }
+        double elapsedSeconds = seconds(start);
+        exported = sheets.getPopulatedSheetCount();
+
+        System.out.println();
+        System.out.printf("[harness] exported %d of %d restaurants in %.1fs (%.2f restaurants/s), %d rows written%n",
+                exported, restaurants, elapsedSeconds, exported / elapsedSeconds, sheets.getWrittenRows());
+        System.out.printf("[harness] menu site: %d requests, %d not modified, %.1f MB of pages served, %d injected errors%n",
+                site.getFaults().getRequests(), site.getNotModified(), site.getBytesServed() / 1e6, site.getFaults().getInjectedErrors());
+        System.out.printf("[harness] pages fetched: %s%n", counters(registries, "expirenza.pages.fetched", "via"));
+        System.out.printf("[harness] sheets api: %s, %d throttled, %d injected errors, %d sheets written more than once%n",
+                sheets.getCallsByOperation(), sheets.getFaults().getThrottled(), sheets.getFaults().getInjectedErrors(),
+                sheets.getRewrittenSheetCount());
+        for (int node = 0; node < registries.size(); node++) {
+            String nodeLabel = registries.size() > 1 ? " node " + (node + 1) : "";
+            for (Timer timer : registries.get(node).find("expirenza.stage.duration").timers()) {
+                System.out.printf("[harness]%s stage %-7s count=%d mean=%.1fms max=%.1fms%n", nodeLabel, timer.getId().getTag("stage"),
+                        timer.count(), timer.mean(TimeUnit.MILLISECONDS), timer.max(TimeUnit.MILLISECONDS));
+            }
+        }
+        System.out.printf("[harness] peak queue depth: urls %.0f/%d, restaurants %.0f/%d -> %s%n",
+                peakUrlDepth, urlCapacity, peakRestaurantDepth, restaurantCapacity,
+                // A run smaller than a queue can never fill it, so fill is measured against what could have been queued
+                bottleneck(peakUrlDepth / Math.min(urlCapacity, restaurants), peakRestaurantDepth / Math.min(restaurantCapacity, restaurants)));
+
+        contexts.forEach(ConfigurableApplicationContext::close);
+    }
+
+    // A queue that fills up means the stage draining it is the one holding the pipeline back
+    private static String bottleneck(double urlFill, double restaurantFill) {
+        if (restaurantFill >= 0.9) {
+            return "export stage is the bottleneck";
+        }
+        if (urlFill >= 0.9) {
+            return "parse stage is the bottleneck";
+        }
+        return "URL production or crawl scheduling is the bottleneck";
+    }
+
+    // Summed over all nodes
+    private static double gauge(List<MeterRegistry> registries, String name, String tagKey, String tagValue) {
+        double sum = 0;
+        for (MeterRegistry registry : registries) {
+            Gauge gauge = tagKey == null ? registry.find(name).gauge() : registry.find(name).tag(tagKey, tagValue).gauge();
+            sum += gauge != null ? gauge.value() : 0;
+        }
+        return sum;
+    }
+
+    // Counter totals by tag value, summed over all nodes
+    private static Map<String, Long> counters(List<MeterRegistry> registries, String name, String tagKey) {
+        Map<String, Long> totals = new TreeMap<>();
+        for (MeterRegistry registry : registries) {
+            for (Counter counter : registry.find(name).counters()) {
+                totals.merge(counter.getId().getTag(tagKey), (long) counter.count(), Long::sum);
+            }
+        }
+        return totals;
+    }
+
+    private static double seconds(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+}
@@ -0,0 +1,79 @@
+package dev.haguel.expirenza_agent.main.impl;
+
+import com.google.api.services.sheets.v4.model.ValueRange;
+import dev.haguel.expirenza_agent.benchmarks.MenuFixtures;
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.sheets.DishRowIndex;
+import dev.haguel.expirenza_agent.sheets.SheetWritePlan;
+import dev.haguel.expirenza_agent.sheets.SheetWritePlanner;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Lives in the exporter's package to reach its package-private row bookkeeping without a Sheets client
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ExporterPartitionBenchmark {
+
+    @Param({"10000", "100000"})
+    private int rows;
+
+    private final ExpirenzaMenuDishesExporter exporter = new ExpirenzaMenuDishesExporter(null, null, null);
+    private final SheetWritePlanner planner = new SheetWritePlanner(2_000_000);
+
+    private List<List<Object>> sheetColumns;
+    private DishRowIndex existingDishRows;
+    private final DishRowIndex reusedIndex = new DishRowIndex();
+    private List<Dish> dishes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sheetColumns = MenuFixtures.dishKeyColumns("Category", rows);
+        existingDishRows = exporter.toSheetRows(sheetColumns, new DishRowIndex()).existingDishRows();
+        // Half of the menu is already on the sheet and half of it is new
+        dishes = new ArrayList<>(MenuFixtures.dishes("Category", rows).subList(rows / 2, rows));
+        for (Dish dish : MenuFixtures.dishes("Category", rows / 2)) {
+            dishes.add(Dish.builder()
+                    .name(dish.getName() + " new")
+                    .dishCategory(dish.getDishCategory())
+                    .description(dish.getDescription())
+                    .price(dish.getPrice())
+                    .build());
+        }
+    }
+
+    // Refills the index of the previous export, as the exporter does for a sheet it has read before
+    @Benchmark
+    public ExpirenzaMenuDishesExporter.SheetRows toSheetRows() {
+        return exporter.toSheetRows(sheetColumns, reusedIndex);
+    }
+
+    @Benchmark
+    public ExpirenzaMenuDishesExporter.SheetRows toSheetRowsFreshIndex() {
+        return exporter.toSheetRows(sheetColumns, new DishRowIndex());
+    }
+
+    @Benchmark
+    public ExpirenzaMenuDishesExporter.PartitionedDishes partitionDishes() {
+        return exporter.partitionDishes(dishes, existingDishRows);
+    }
+
+    // Half of the rows change in place and half are appended, so the plan should come down to a couple of ranges
+    @Benchmark
+    public List<List<ValueRange>> planWrites() {
+        ExpirenzaMenuDishesExporter.PartitionedDishes partitioned = exporter.partitionDishes(dishes, existingDishRows);
+        SheetWritePlan plan = new SheetWritePlan("Benchmark Bistro");
+        partitioned.forUpdate().forEach(plan::write);
+        int row = sheetColumns.size();
+        for (List<Object> newRow : partitioned.forAppend()) {
+            plan.write(++row, newRow);
+        }
+        return planner.plan(List.of(plan));
+    }
+}
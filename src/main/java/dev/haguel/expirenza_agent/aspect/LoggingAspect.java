@@ -5,40 +5,51 @@ import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
+// Opt-in debugging aid; stage latencies and error counts are always available through AgentMetrics
 @Aspect
 @Component
+@ConditionalOnProperty(name = "logging.aspect.enabled", havingValue = "true")
 @Slf4j
 public class LoggingAspect {
 
-    @Pointcut("execution(public * dev.haguel.expirenza_agent..*.*(..))")
+    @Value("${logging.aspect.sampleRate:0.01}")
+    private double sampleRate;
+
+    @Value("${logging.aspect.maxValueLength:300}")
+    private int maxValueLength;
+
+    @Pointcut("execution(public * dev.haguel.expirenza_agent..*.*(..)) && !within(dev.haguel.expirenza_agent.metrics..*)")
     public void applicationPackagePointcut() {}
 
 
     @Around("applicationPackagePointcut()")
     public Object logAround(ProceedingJoinPoint joinPoint) throws Throwable {
-        if (log.isInfoEnabled()) {
-            log.info("==> Enter: {}() with argument[s] = {}",
+        boolean sampled = log.isDebugEnabled() && ThreadLocalRandom.current().nextDouble() < sampleRate;
+        if (sampled) {
+            log.debug("==> Enter: {}() with argument[s] = {}",
                     joinPoint.getSignature().getName(),
-                    Arrays.toString(joinPoint.getArgs()));
+                    abbreviate(Arrays.toString(joinPoint.getArgs())));
         }
 
-        long startTime = System.currentTimeMillis();
+        long startTime = System.nanoTime();
         Object result;
 
         try {
             result = joinPoint.proceed();
-            long endTime = System.currentTimeMillis();
-            long executionTime = endTime - startTime;
 
-            if (log.isInfoEnabled()) {
-                log.info("<== Exit: {}() with result = {}. Execution time: {} ms",
+            if (sampled) {
+                log.debug("<== Exit: {}() with result = {}. Execution time: {} ms",
                         joinPoint.getSignature().getName(),
-                        result,
-                        executionTime);
+                        abbreviate(String.valueOf(result)),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
             }
 
             return result;
@@ -52,4 +63,8 @@ public class LoggingAspect {
             throw e;
         }
     }
+
+    private String abbreviate(String value) {
+        return value.length() <= maxValueLength ? value : value.substring(0, maxValueLength) + "...";
+    }
 }
@@ -0,0 +1,237 @@
+package dev.haguel.expirenza_agent.cluster;
+
+import dev.haguel.expirenza_agent.cluster.ShardLeaseStore.ScheduleEntry;
+import dev.haguel.expirenza_agent.metrics.AgentMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.IntPredicate;
+
+// Splits the URLs into a fixed number of shards and decides which of them this node crawls. With cluster.enabled off
+// the node owns the single shard and nothing is shared. Otherwise every node heartbeats into a shared ShardLeaseStore,
+// renews its leases and rebalances towards an even share: spare leases are claimed, and surplus shards are first
+// drained of in-flight crawls and only then released, so no restaurant is ever crawled by two nodes at once.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ShardCoordinator {
+    private final AgentMetrics agentMetrics;
+
+    @Value("${cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${cluster.nodeId:}")
+    private String nodeId;
+
+    @Value("${cluster.shards:64}")
+    private int shards;
+
+    @Value("${cluster.leaseMillis:30000}")
+    private long leaseMillis;
+
+    @Value("${cluster.heartbeatMillis:10000}")
+    private long heartbeatMillis;
+
+    @Value("${cluster.jdbc.url:jdbc:h2:file:./data/cluster;AUTO_SERVER=TRUE}")
+    private String jdbcUrl;
+
+    @Value("${cluster.jdbc.username:sa}")
+    private String jdbcUsername;
+
+    @Value("${cluster.jdbc.password:}")
+    private String jdbcPassword;
+
+    private ShardLeaseStore store;
+    private final Set<Integer> ownedShards = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> drainingShards = ConcurrentHashMap.newKeySet();
+    private final Map<String, ScheduleEntry> pendingSchedule = new ConcurrentHashMap<>();
+    private volatile int liveNodes;
+    // Leases are trusted locally for one heartbeat less than they last in the store, which leaves that much room
+    // for clock differences between nodes and for a slow heartbeat
+    private volatile long leasesValidUntilMillis;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        if (shards <= 0 || heartbeatMillis >= leaseMillis) {
+            throw new IllegalArgumentException("cluster.shards must be positive and cluster.heartbeatMillis below cluster.leaseMillis");
+        }
+        if (nodeId == null || nodeId.isBlank()) {
+            nodeId = defaultNodeId();
+        }
+        store = new ShardLeaseStore(jdbcUrl, jdbcUsername, jdbcPassword, shards);
+        agentMetrics.gauge("expirenza.cluster.shards", "Shards this node crawls", ownedShards::size);
+        agentMetrics.gauge("expirenza.cluster.nodes", "Live nodes seen at the last heartbeat", () -> liveNodes);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // String.hashCode is fixed by the language spec, so every node maps a URL to the same shard
+    public int shardOf(String url) {
+        if (!enabled) {
+            return 0;
+        }
+        int hash = url.hashCode() * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), shards);
+    }
+
+    // Whether new crawls of the shard may start on this node
+    public boolean isActive(int shard) {
+        return !enabled || (ownedShards.contains(shard) && !drainingShards.contains(shard) && leasesValid());
+    }
+
+    // Whether a finished crawl of the URL may still be exported. Draining shards are still held, so crawls that were
+    // running when the shard was given up finish normally.
+    public boolean holds(String url) {
+        return !enabled || (ownedShards.contains(shardOf(url)) && leasesValid());
+    }
+
+    // Kept in memory and written with the next heartbeat, so a node taking the shard over knows when it is due
+    public void recordSchedule(String url, int shard, long nextDueMillis, long intervalMillis, long contentHash) {
+        if (enabled) {
+            pendingSchedule.put(url, new ScheduleEntry(url, shard, nextDueMillis, intervalMillis, contentHash));
+        }
+    }
+
+    // Runs one lease round. busyShard tells which shards still have crawls in flight on this node; restoreSchedule
+    // receives newly claimed shards and their saved schedule before any of their URLs can be dispatched.
+    public synchronized void heartbeat(IntPredicate busyShard, BiConsumer<Set<Integer>, List<ScheduleEntry>> restoreSchedule) {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            long now = System.currentTimeMillis();
+            flushSchedule();
+            liveNodes = store.heartbeat(nodeId, now, leaseMillis);
+
+            Set<Integer> renewed = store.renew(nodeId, now + leaseMillis);
+            ownedShards.retainAll(renewed);
+            drainingShards.retainAll(renewed);
+            // Leases of a node restarted under the same id outlive it in the store
+            Set<Integer> adopted = new TreeSet<>(renewed);
+            adopted.removeAll(ownedShards);
+            if (!adopted.isEmpty()) {
+                restoreSchedule.accept(adopted, store.loadSchedule(adopted));
+                ownedShards.addAll(adopted);
+            }
+            leasesValidUntilMillis = now + leaseMillis - heartbeatMillis;
+
+            int fairShare = (shards + liveNodes - 1) / Math.max(1, liveNodes);
+            if (renewed.size() > fairShare) {
+                drain(renewed, fairShare, busyShard);
+            } else {
+                // A node left while shards were draining, so they are needed here after all
+                drainingShards.clear();
+                if (renewed.size() < fairShare) {
+                    claim(fairShare - renewed.size(), now, restoreSchedule);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            agentMetrics.error("cluster");
+            log.warn("Cluster heartbeat of {} failed, leases lapse if this persists: {}", nodeId, e.getMessage());
+        }
+    }
+
+    // The highest shards are given up first. A shard is released only once its last in-flight crawl has finished.
+    private void drain(Set<Integer> renewed, int fairShare, IntPredicate busyShard) throws SQLException {
+        List<Integer> surplus = new ArrayList<>(renewed);
+        surplus.sort(Comparator.reverseOrder());
+        surplus = surplus.subList(0, renewed.size() - fairShare);
+        drainingShards.retainAll(surplus);
+        drainingShards.addAll(surplus);
+
+        List<Integer> idle = surplus.stream().filter(shard -> !busyShard.test(shard)).toList();
+        if (idle.isEmpty()) {
+            return;
+        }
+        // Their last crawls may have been recorded since the flush above
+        flushSchedule();
+        store.release(idle, nodeId);
+        idle.forEach(ownedShards::remove);
+        idle.forEach(drainingShards::remove);
+        log.info("Node {} released shards {}", nodeId, idle);
+    }
+
+    private void claim(int wanted, long now, BiConsumer<Set<Integer>, List<ScheduleEntry>> restoreSchedule) throws SQLException {
+        List<Integer> claimable = store.findClaimable(now);
+        // Nodes that start together would otherwise all race for the lowest shards
+        Collections.shuffle(claimable);
+
+        List<Integer> claimed = new ArrayList<>();
+        for (int shard : claimable) {
+            if (claimed.size() >= wanted) {
+                break;
+            }
+            if (store.claim(shard, nodeId, now, now + leaseMillis)) {
+                claimed.add(shard);
+            }
+        }
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        restoreSchedule.accept(new TreeSet<>(claimed), store.loadSchedule(claimed));
+        ownedShards.addAll(claimed);
+        log.info("Node {} claimed shards {}", nodeId, claimed);
+    }
+
+    private void flushSchedule() throws SQLException {
+        if (pendingSchedule.isEmpty()) {
+            return;
+        }
+        List<ScheduleEntry> entries = new ArrayList<>(pendingSchedule.values());
+        store.saveSchedule(entries);
+        // An entry recorded again meanwhile is newer and stays for the next flush
+        entries.forEach(entry -> pendingSchedule.remove(entry.url(), entry));
+    }
+
+    private boolean leasesValid() {
+        return System.currentTimeMillis() < leasesValidUntilMillis;
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown-host";
+        }
+        return host + "-" + ManagementFactory.getRuntimeMXBean().getPid();
+    }
+
+    // Runs after the agent has drained its pipeline, so nothing of this node is in flight any more
+    @PreDestroy
+    public synchronized void leave() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            flushSchedule();
+            store.leave(nodeId);
+        } catch (SQLException e) {
+            log.error("Node {} could not give up its leases, they expire in {} ms: {}", nodeId, leaseMillis, e.getMessage());
+        }
+        ownedShards.clear();
+        store.close();
+    }
+}
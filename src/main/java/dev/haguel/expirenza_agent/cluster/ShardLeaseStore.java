@@ -0,0 +1,269 @@
+package dev.haguel.expirenza_agent.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.sql.*;
+import java.util.*;
+
+// Shared state of a crawl cluster: one lease row per shard, one heartbeat row per node and the crawl schedule of every
+// URL that was crawled at least once. A shard is claimed with a conditional UPDATE, so two nodes can never both win
+// the same free or expired lease. Every method is one transaction.
+@Slf4j
+public class ShardLeaseStore implements Closeable {
+    private static final String CREATE_LEASES = """
+            CREATE TABLE IF NOT EXISTS crawl_shard_leases (
+                shard INT PRIMARY KEY,
+                owner VARCHAR(256),
+                expires_at BIGINT NOT NULL DEFAULT 0
+            )""";
+    private static final String CREATE_NODES = """
+            CREATE TABLE IF NOT EXISTS crawl_nodes (
+                node_id VARCHAR(256) PRIMARY KEY,
+                heartbeat_at BIGINT NOT NULL
+            )""";
+    private static final String CREATE_SCHEDULE = """
+            CREATE TABLE IF NOT EXISTS crawl_schedule (
+                url VARCHAR(2048) PRIMARY KEY,
+                shard INT NOT NULL,
+                next_due_at BIGINT NOT NULL,
+                interval_millis BIGINT NOT NULL,
+                content_hash BIGINT NOT NULL
+            )""";
+    private static final String CREATE_SCHEDULE_INDEX = "CREATE INDEX IF NOT EXISTS crawl_schedule_shard ON crawl_schedule (shard)";
+    private static final String INSERT_SHARD = "MERGE INTO crawl_shard_leases (shard) KEY (shard) VALUES (?)";
+    private static final String UPSERT_NODE = "MERGE INTO crawl_nodes (node_id, heartbeat_at) KEY (node_id) VALUES (?, ?)";
+    private static final String DELETE_NODE = "DELETE FROM crawl_nodes WHERE node_id = ?";
+    private static final String DELETE_DEAD_NODES = "DELETE FROM crawl_nodes WHERE heartbeat_at < ?";
+    private static final String COUNT_LIVE_NODES = "SELECT COUNT(*) FROM crawl_nodes WHERE heartbeat_at >= ?";
+    private static final String RENEW = "UPDATE crawl_shard_leases SET expires_at = ? WHERE owner = ? AND shard < ?";
+    private static final String SELECT_OWNED = "SELECT shard FROM crawl_shard_leases WHERE owner = ? AND shard < ?";
+    private static final String SELECT_CLAIMABLE = "SELECT shard FROM crawl_shard_leases WHERE (owner IS NULL OR expires_at < ?) AND shard < ?";
+    private static final String CLAIM = """
+            UPDATE crawl_shard_leases SET owner = ?, expires_at = ?
+            WHERE shard = ? AND (owner IS NULL OR expires_at < ?)""";
+    private static final String RELEASE = "UPDATE crawl_shard_leases SET owner = NULL, expires_at = 0 WHERE shard = ? AND owner = ?";
+    private static final String RELEASE_ALL = "UPDATE crawl_shard_leases SET owner = NULL, expires_at = 0 WHERE owner = ?";
+    private static final String UPSERT_SCHEDULE = """
+            MERGE INTO crawl_schedule (url, shard, next_due_at, interval_millis, content_hash)
+            KEY (url) VALUES (?, ?, ?, ?, ?)""";
+    private static final String SELECT_SCHEDULE = "SELECT url, next_due_at, interval_millis, content_hash FROM crawl_schedule WHERE shard = ?";
+
+    public record ScheduleEntry(String url, int shard, long nextDueMillis, long intervalMillis, long contentHash) {}
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int shards;
+    private Connection connection;
+
+    public ShardLeaseStore(String url, String username, String password, int shards) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.shards = shards;
+    }
+
+    // Records that the node is alive and returns how many nodes sent a heartbeat within one lease, this one included
+    public synchronized int heartbeat(String nodeId, long now, long leaseMillis) throws SQLException {
+        Connection connection = getConnection();
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT_NODE);
+             PreparedStatement deleteDead = connection.prepareStatement(DELETE_DEAD_NODES);
+             PreparedStatement count = connection.prepareStatement(COUNT_LIVE_NODES)) {
+            upsert.setString(1, nodeId);
+            upsert.setLong(2, now);
+            upsert.executeUpdate();
+            // Nodes that stopped without saying goodbye are forgotten once their leases are long gone
+            deleteDead.setLong(1, now - leaseMillis * 10);
+            deleteDead.executeUpdate();
+            count.setLong(1, now - leaseMillis);
+            try (ResultSet resultSet = count.executeQuery()) {
+                resultSet.next();
+                int liveNodes = resultSet.getInt(1);
+                connection.commit();
+                return liveNodes;
+            }
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    // Extends every lease the node still holds and returns those shards. A lease that expired and was taken over by
+    // another node is missing from the result.
+    public synchronized Set<Integer> renew(String nodeId, long expiresAt) throws SQLException {
+        Connection connection = getConnection();
+        try (PreparedStatement renew = connection.prepareStatement(RENEW);
+             PreparedStatement select = connection.prepareStatement(SELECT_OWNED)) {
+            renew.setLong(1, expiresAt);
+            renew.setString(2, nodeId);
+            renew.setInt(3, shards);
+            renew.executeUpdate();
+            select.setString(1, nodeId);
+            select.setInt(2, shards);
+            Set<Integer> owned = readShards(select);
+            connection.commit();
+            return owned;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    public synchronized List<Integer> findClaimable(long now) throws SQLException {
+        Connection connection = getConnection();
+        try (PreparedStatement select = connection.prepareStatement(SELECT_CLAIMABLE)) {
+            select.setLong(1, now);
+            select.setInt(2, shards);
+            List<Integer> claimable = new ArrayList<>(readShards(select));
+            connection.commit();
+            return claimable;
+        }
+    }
+
+    // Returns false when another node claimed the shard first
+    public synchronized boolean claim(int shard, String nodeId, long now, long expiresAt) throws SQLException {
+        Connection connection = getConnection();
+        try (PreparedStatement claim = connection.prepareStatement(CLAIM)) {
+            claim.setString(1, nodeId);
+            claim.setLong(2, expiresAt);
+            claim.setInt(3, shard);
+            claim.setLong(4, now);
+            boolean claimed = claim.executeUpdate() == 1;
+            connection.commit();
+            return claimed;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    public synchronized void release(Collection<Integer> shards, String nodeId) throws SQLException {
+        if (shards.isEmpty()) {
+            return;
+        }
+        Connection connection = getConnection();
+        try (PreparedStatement release = connection.prepareStatement(RELEASE)) {
+            for (int shard : shards) {
+                release.setInt(1, shard);
+                release.setString(2, nodeId);
+                release.addBatch();
+            }
+            release.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    // Gives up every lease of a node that is shutting down, so the others pick its shards up on their next heartbeat
+    public synchronized void leave(String nodeId) throws SQLException {
+        Connection connection = getConnection();
+        try (PreparedStatement releaseAll = connection.prepareStatement(RELEASE_ALL);
+             PreparedStatement delete = connection.prepareStatement(DELETE_NODE)) {
+            releaseAll.setString(1, nodeId);
+            releaseAll.executeUpdate();
+            delete.setString(1, nodeId);
+            delete.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    public synchronized void saveSchedule(Collection<ScheduleEntry> entries) throws SQLException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        Connection connection = getConnection();
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT_SCHEDULE)) {
+            for (ScheduleEntry entry : entries) {
+                upsert.setString(1, entry.url());
+                upsert.setInt(2, entry.shard());
+                upsert.setLong(3, entry.nextDueMillis());
+                upsert.setLong(4, entry.intervalMillis());
+                upsert.setLong(5, entry.contentHash());
+                upsert.addBatch();
+            }
+            upsert.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    public synchronized List<ScheduleEntry> loadSchedule(Collection<Integer> shards) throws SQLException {
+        Connection connection = getConnection();
+        List<ScheduleEntry> entries = new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement(SELECT_SCHEDULE)) {
+            for (int shard : shards) {
+                select.setInt(1, shard);
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        entries.add(new ScheduleEntry(resultSet.getString(1), shard, resultSet.getLong(2),
+                                resultSet.getLong(3), resultSet.getLong(4)));
+                    }
+                }
+            }
+            connection.commit();
+        }
+        return entries;
+    }
+
+    private static Set<Integer> readShards(PreparedStatement select) throws SQLException {
+        Set<Integer> result = new TreeSet<>();
+        try (ResultSet resultSet = select.executeQuery()) {
+            while (resultSet.next()) {
+                result.add(resultSet.getInt(1));
+            }
+        }
+        return result;
+    }
+
+    private Connection getConnection() throws SQLException {
+        if (connection != null && connection.isValid(1)) {
+            return connection;
+        }
+        if (connection != null) {
+            connection.close();
+        }
+
+        connection = DriverManager.getConnection(url, username, password);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_LEASES);
+            statement.execute(CREATE_NODES);
+            statement.execute(CREATE_SCHEDULE);
+            statement.execute(CREATE_SCHEDULE_INDEX);
+        }
+        connection.setAutoCommit(false);
+        // Every node seeds the full shard range; rows that already exist are left alone
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_SHARD)) {
+            for (int shard = 0; shard < shards; shard++) {
+                insert.setInt(1, shard);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+        return connection;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.warn("Failed to close the cluster database connection: {}", e.getMessage());
+        }
+        connection = null;
+    }
+}
@@ -0,0 +1,113 @@
+package dev.haguel.expirenza_agent.config;
+
+import dev.haguel.expirenza_agent.cluster.ShardCoordinator;
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import dev.haguel.expirenza_agent.main.BatchDataExporter;
+import dev.haguel.expirenza_agent.main.ExportListener;
+import dev.haguel.expirenza_agent.main.impl.ExpirenzaMenuDishesExporter;
+import dev.haguel.expirenza_agent.main.impl.FanOutMenuExporter;
+import dev.haguel.expirenza_agent.main.impl.RetryingMenuExporter;
+import dev.haguel.expirenza_agent.metrics.AgentMetrics;
+import dev.haguel.expirenza_agent.resilience.ResilienceRegistry;
+import dev.haguel.expirenza_agent.sink.ColumnarMenuSink;
+import dev.haguel.expirenza_agent.sink.CsvMenuSink;
+import dev.haguel.expirenza_agent.sink.JdbcMenuSink;
+import dev.haguel.expirenza_agent.sink.JsonLinesMenuSink;
+import dev.haguel.expirenza_agent.utils.ExecutionMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Configuration
+public class ExporterConfig {
+
+    @Value("${exporter.sinks:sheets}")
+    private List<String> sinks;
+
+    @Value("${exporter.file.directory:data/exports}")
+    private String fileDirectory;
+
+    @Value("${exporter.file.rotateMb:128}")
+    private long rotateMb;
+
+    @Value("${exporter.file.gzip:true}")
+    private boolean gzip;
+
+    @Value("${exporter.jdbc.url:jdbc:h2:file:./data/menus}")
+    private String jdbcUrl;
+
+    @Value("${exporter.jdbc.username:sa}")
+    private String jdbcUsername;
+
+    @Value("${exporter.jdbc.password:}")
+    private String jdbcPassword;
+
+    @Value("${exporter.retry.maxPending:1000}")
+    private int retryMaxPending;
+
+    @Value("${agent.execution.mode:PLATFORM}")
+    private ExecutionMode executionMode;
+
+    // The first configured sink is the primary one that decides whether a crawl was exported; its failures fail the crawl,
+    // which the crawl scheduler retries. Every other sink gets its own retry queue, so a failing sink never makes the
+    // others write a batch twice.
+    @Bean
+    public FanOutMenuExporter menuSinks(ExpirenzaMenuDishesExporter sheetsExporter, ResilienceRegistry resilienceRegistry,
+                                        AgentMetrics agentMetrics, ShardCoordinator shardCoordinator) throws IOException {
+        Path directory = Path.of(fileDirectory);
+        long rotateBytes = rotateMb * 1024 * 1024;
+
+        Map<String, BatchDataExporter<Restaurant>> exporters = new LinkedHashMap<>();
+        for (String sink : sinks) {
+            String name = sink.trim();
+            BatchDataExporter<Restaurant> exporter = switch (name) {
+                case "sheets" -> sheetsExporter;
+                case "jsonl" -> new JsonLinesMenuSink(directory, rotateBytes, gzip);
+                case "csv" -> new CsvMenuSink(directory, rotateBytes, gzip);
+                case "columnar" -> new ColumnarMenuSink(directory, rotateBytes, gzip);
+                case "jdbc" -> new JdbcMenuSink(jdbcUrl, jdbcUsername, jdbcPassword);
+                default -> throw new IllegalArgumentException("Unknown exporter sink: " + name);
+            };
+            if (!exporters.isEmpty()) {
+                RetryingMenuExporter retryingExporter = new RetryingMenuExporter(name, exporter, resilienceRegistry, agentMetrics,
+                        retryMaxPending, shardCoordinator::holds, sinkOutcomes(name, agentMetrics));
+                agentMetrics.gauge("expirenza.export.pending", "Restaurants waiting in a sink's retry queue",
+                        retryingExporter::getPendingCount, "sink", name);
+                exporter = retryingExporter;
+            }
+            exporters.put(name, exporter);
+        }
+        if (exporters.isEmpty()) {
+            throw new IllegalArgumentException("exporter.sinks must name at least one sink");
+        }
+
+        String primaryName = exporters.keySet().iterator().next();
+        BatchDataExporter<Restaurant> primary = exporters.remove(primaryName);
+        return new FanOutMenuExporter(primaryName, primary, exporters, agentMetrics, executionMode);
+    }
+
+    // Nobody waits for a secondary sink, so what its retry queue gave up on is only counted
+    private static ExportListener<Restaurant> sinkOutcomes(String name, AgentMetrics agentMetrics) {
+        return new ExportListener<>() {
+            @Override
+            public void exported(Restaurant restaurant) {
+            }
+
+            @Override
+            public void failed(Restaurant restaurant, RuntimeException e) {
+                agentMetrics.error("sink." + name + ".dropped");
+            }
+
+            @Override
+            public void discarded(Restaurant restaurant) {
+                agentMetrics.error("sink." + name + ".discarded");
+            }
+        };
+    }
+}
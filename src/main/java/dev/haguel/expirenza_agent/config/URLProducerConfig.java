@@ -0,0 +1,52 @@
+package dev.haguel.expirenza_agent.config;
+
+import dev.haguel.expirenza_agent.main.ItemProducer;
+import dev.haguel.expirenza_agent.main.impl.DistinctURLProducer;
+import dev.haguel.expirenza_agent.main.impl.ExpirenzaMenuURLProducer;
+import dev.haguel.expirenza_agent.main.impl.FileMenuURLProducer;
+import dev.haguel.expirenza_agent.main.impl.SitemapMenuURLProducer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+@Configuration
+public class URLProducerConfig {
+
+    @Value("${producer.source:static}")
+    private String source;
+
+    @Value("${producer.file.path:menu-urls.txt}")
+    private String filePath;
+
+    @Value("${producer.sitemap.url:}")
+    private String sitemapUrl;
+
+    @Value("${producer.sitemap.urlPattern:https://expz\\.menu/.+}")
+    private String sitemapUrlPattern;
+
+    @Value("${producer.sitemap.refreshMinutes:60}")
+    private long sitemapRefreshMinutes;
+
+    // Sources may repeat URLs; they are dropped here, before they reach the scheduler
+    @Bean
+    public ItemProducer<?, String> menuURLProducer() {
+        return new DistinctURLProducer(source());
+    }
+
+    private ItemProducer<?, String> source() {
+        return switch (source) {
+            case "file" -> new FileMenuURLProducer(Path.of(filePath));
+            case "sitemap" -> new SitemapMenuURLProducer(
+                    URI.create(sitemapUrl),
+                    Pattern.compile(sitemapUrlPattern),
+                    Duration.ofMinutes(sitemapRefreshMinutes));
+            case "static" -> new ExpirenzaMenuURLProducer();
+            default -> throw new IllegalArgumentException("Unknown producer.source: " + source);
+        };
+    }
+}
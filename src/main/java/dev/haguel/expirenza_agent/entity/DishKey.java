@@ -0,0 +1,28 @@
+package dev.haguel.expirenza_agent.entity;
+
+public record DishKey(String category, String subCategory, String name) {
+    private static final char SEPARATOR = '\u001F';
+
+    public static DishKey of(Dish dish) {
+        DishCategory dishCategory = dish.getDishCategory();
+        return new DishKey(
+                dishCategory != null ? nullToEmpty(dishCategory.getCategory()) : "",
+                dishCategory != null ? nullToEmpty(dishCategory.getSubCategory()) : "",
+                nullToEmpty(dish.getName())
+        );
+    }
+
+    public static DishKey decode(String encoded) {
+        int first = encoded.indexOf(SEPARATOR);
+        int second = encoded.indexOf(SEPARATOR, first + 1);
+        return new DishKey(encoded.substring(0, first), encoded.substring(first + 1, second), encoded.substring(second + 1));
+    }
+
+    public String encode() {
+        return category + SEPARATOR + subCategory + SEPARATOR + name;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+}
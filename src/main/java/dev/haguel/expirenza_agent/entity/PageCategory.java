@@ -0,0 +1,3 @@
+package dev.haguel.expirenza_agent.entity;
+
+public record PageCategory(String name, String url) {}
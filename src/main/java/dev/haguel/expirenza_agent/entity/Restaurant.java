@@ -10,6 +10,7 @@ import java.util.List;
 @Builder
 @Getter
 public class Restaurant {
+    private String url;
     private String name;
     List<Dish> dishes;
 }
@@ -0,0 +1,8 @@
+package dev.haguel.expirenza_agent.exception;
+
+// A host's circuit breaker refused a request; the session that was about to make it is fine
+public class CircuitOpenException extends RuntimeException {
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+}
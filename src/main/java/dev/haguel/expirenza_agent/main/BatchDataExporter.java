@@ -0,0 +1,12 @@
+package dev.haguel.expirenza_agent.main;
+
+import java.util.List;
+
+public interface BatchDataExporter<T> extends DataExporter<T> {
+    void exportAll(List<T> data);
+
+    @Override
+    default void export(T data) {
+        exportAll(List.of(data));
+    }
+}
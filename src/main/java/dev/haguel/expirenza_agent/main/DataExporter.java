@@ -2,4 +2,15 @@ package dev.haguel.expirenza_agent.main;
 
 public interface DataExporter<T> {
     void export(T data);
+
+    // Exporters that buffer call the listener once the data has actually been written
+    default void export(T data, ExportListener<T> listener) {
+        try {
+            export(data);
+        } catch (RuntimeException e) {
+            listener.failed(data, e);
+            return;
+        }
+        listener.exported(data);
+    }
 }
@@ -0,0 +1,11 @@
+package dev.haguel.expirenza_agent.main;
+
+// Told once the data handed to an exporter has been written or given up on
+public interface ExportListener<T> {
+    void exported(T data);
+
+    void failed(T data, RuntimeException e);
+
+    // The data may no longer be written by this node, for example because another node took over its shard
+    void discarded(T data);
+}
@@ -2,9 +2,48 @@ package dev.haguel.expirenza_agent.main;
 
 import lombok.RequiredArgsConstructor;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @RequiredArgsConstructor
 public abstract class ItemProducer<T, V> {
     protected final T dataSource;
 
+    // A pass is one walk over the whole source. Sources that walk it again from time to time count their passes, so
+    // items a completed pass no longer listed can be forgotten.
+    private long startedPasses;
+    private long completedPasses;
+
     public abstract V produce();
+
+    // Stops at the end of a pass, so a batch never holds items of two passes
+    public List<V> produceBatch(int maxCount) {
+        List<V> batch = new ArrayList<>(Math.min(maxCount, 1024));
+        V item;
+        while (batch.size() < maxCount && (item = produce()) != null) {
+            batch.add(item);
+        }
+        return batch;
+    }
+
+    public long getStartedPasses() {
+        return startedPasses;
+    }
+
+    public long getCompletedPasses() {
+        return completedPasses;
+    }
+
+    // Whether the item was produced during the last completed pass; sources that cannot tell keep every item
+    public boolean listedInLastPass(V item) {
+        return true;
+    }
+
+    protected void passStarted() {
+        startedPasses++;
+    }
+
+    protected void passCompleted() {
+        completedPasses++;
+    }
 }
@@ -1,23 +1,74 @@
 package dev.haguel.expirenza_agent.main.impl;
 
+import dev.haguel.expirenza_agent.cluster.ShardCoordinator;
+import dev.haguel.expirenza_agent.cluster.ShardLeaseStore.ScheduleEntry;
 import dev.haguel.expirenza_agent.entity.Restaurant;
 import dev.haguel.expirenza_agent.exception.InvalidParseException;
 import dev.haguel.expirenza_agent.main.*;
+import dev.haguel.expirenza_agent.metrics.AgentMetrics;
+import dev.haguel.expirenza_agent.store.MenuFingerprintStore;
+import dev.haguel.expirenza_agent.store.MenuSnapshotLog;
+import dev.haguel.expirenza_agent.utils.ExecutionMode;
 import dev.haguel.expirenza_agent.utils.ExecutorUtil;
+import dev.haguel.expirenza_agent.utils.MenuFingerprints;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Component
 @RequiredArgsConstructor
+@Slf4j
 public class Agent implements Scheduler {
     private final DataExporter<Restaurant> exporter;
     private final ItemParser<String, Restaurant> itemParser;
+    private final CrawlScheduler crawlScheduler;
+    private final ItemProducer<?, String> itemProducer;
+    private final AgentMetrics agentMetrics;
+    private final MenuSnapshotLog menuSnapshotLog;
+    private final ShardCoordinator shardCoordinator;
+    private final MenuFingerprintStore menuFingerprintStore;
 
-    private ItemProducer<LinkedBlockingQueue<String>, String> itemProducer;
+    @Value("${agent.execution.mode:PLATFORM}")
+    private ExecutionMode executionMode;
+
+    @Value("${agent.queue.urlCapacity:1000}")
+    private int urlQueueCapacity;
+
+    @Value("${agent.queue.restaurantCapacity:100}")
+    private int restaurantQueueCapacity;
+
+    @Value("${agent.parser.consumers:0}")
+    private int parserConsumers;
+
+    @Value("${agent.exporter.consumers:0}")
+    private int exporterConsumers;
+
+    @Value("${producer.batchSize:500}")
+    private int producerBatchSize;
+
+    @Value("${agent.shutdownTimeoutSeconds:30}")
+    private long shutdownTimeoutSeconds;
+
+    private static final int VIRTUAL_PARSER_CONSUMERS = 64;
+    private static final int VIRTUAL_EXPORTER_CONSUMERS = 16;
+
+    // Compared by identity, so no real URL or restaurant can be mistaken for them
+    private static final String URL_POISON_PILL = new String("<end of urls>");
+    private static final Restaurant RESTAURANT_POISON_PILL = Restaurant.builder().build();
+
+    private final AtomicBoolean producing = new AtomicBoolean();
+    private long producedPasses;
 
     private BlockingQueue<String> urlsQueue;
     private BlockingQueue<Restaurant> restaurantsQueue;
@@ -27,70 +78,271 @@ public class Agent implements Scheduler {
     private ExecutorService exporterExecutor;
 
     private void setupExecutors() {
+        if (executionMode == ExecutionMode.VIRTUAL) {
+            setupVirtualExecutors();
+            return;
+        }
+
         int singleThreadProcessesCount = 1;
         int processesCount = 3;
 
         int availableThreadsCount = Runtime.getRuntime().availableProcessors() - singleThreadProcessesCount;
-        int threadsPerProcess = (int) Math.ceil((double) availableThreadsCount / processesCount);
+        int threadsPerProcess = Math.max(1, (int) Math.ceil((double) availableThreadsCount / processesCount));
+
+        if (parserConsumers <= 0) {
+            parserConsumers = threadsPerProcess * 2; // needs more threads
+        }
+        if (exporterConsumers <= 0) {
+            exporterConsumers = threadsPerProcess;
+        }
 
         producerExecutor = Executors.newSingleThreadExecutor();
-        parserExecutor = Executors.newFixedThreadPool(threadsPerProcess * 2); // needs more threads
-        exporterExecutor = Executors.newFixedThreadPool(threadsPerProcess);
+        parserExecutor = ExecutorUtil.newExecutor(executionMode, parserConsumers);
+        exporterExecutor = ExecutorUtil.newExecutor(executionMode, exporterConsumers);
+    }
 
-        ExecutorUtil.addShutdownHook(producerExecutor);
-        ExecutorUtil.addShutdownHook(parserExecutor);
-        ExecutorUtil.addShutdownHook(exporterExecutor);
+    // Consumer counts only bound queue draining here; browser sessions and Sheets requests are capped by their own semaphores
+    private void setupVirtualExecutors() {
+        if (parserConsumers <= 0) {
+            parserConsumers = VIRTUAL_PARSER_CONSUMERS;
+        }
+        if (exporterConsumers <= 0) {
+            exporterConsumers = VIRTUAL_EXPORTER_CONSUMERS;
+        }
+
+        producerExecutor = Executors.newSingleThreadExecutor(Thread.ofVirtual().factory());
+        parserExecutor = ExecutorUtil.newExecutor(executionMode, parserConsumers);
+        exporterExecutor = ExecutorUtil.newExecutor(executionMode, exporterConsumers);
     }
 
     @PostConstruct
     public void init() {
+        urlsQueue = new ArrayBlockingQueue<>(urlQueueCapacity);
+        restaurantsQueue = new ArrayBlockingQueue<>(restaurantQueueCapacity);
         setupExecutors();
-        urlsQueue = new LinkedBlockingQueue<>();
-        restaurantsQueue = new LinkedBlockingQueue<>();
+        registerGauges();
+
+        for (int i = 0; i < parserConsumers; i++) {
+            parserExecutor.submit(this::runParser);
+        }
+        for (int i = 0; i < exporterConsumers; i++) {
+            exporterExecutor.submit(this::runExporter);
+        }
+    }
+
+    private void registerGauges() {
+        agentMetrics.gauge("expirenza.queue.depth", "Items waiting in a pipeline queue", urlsQueue::size, "queue", "urls");
+        agentMetrics.gauge("expirenza.queue.depth", "Items waiting in a pipeline queue", restaurantsQueue::size, "queue", "restaurants");
+        agentMetrics.gauge("expirenza.crawl.lag", "Milliseconds the most overdue restaurant is behind schedule", crawlScheduler::getCrawlLagMillis);
+        agentMetrics.gauge("expirenza.crawl.tracked", "Restaurants known to the crawl scheduler", crawlScheduler::getTrackedCount);
+        agentMetrics.gauge("expirenza.crawl.inflight", "Restaurants currently being crawled", crawlScheduler::getInFlightCount);
     }
 
     @Override
-    @Scheduled(fixedRate = 1000 * 60 * 3)
+    @Scheduled(fixedDelayString = "${crawl.tickMillis:10000}")
     public void schedule() {
-        itemProducer = new ExpirenzaMenuURLProducer();
-        producerExecutor.submit(this::produce);
+        if (producing.compareAndSet(false, true)) {
+            producerExecutor.submit(this::produce);
+        }
+        dispatchDueUrls();
     }
 
-    private void produce() {
-        String url = itemProducer.produce();
-        if(url != null) {
-            try {
-                urlsQueue.put(url);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+    // Lease rounds run apart from the crawl tick, so a node keeps its shards while a long dispatch is under way
+    @Scheduled(fixedDelayString = "${cluster.heartbeatMillis:10000}")
+    public void heartbeat() {
+        if (!shardCoordinator.isEnabled()) {
+            return;
+        }
+        shardCoordinator.heartbeat(crawlScheduler::isShardBusy, this::takeOver);
+
+        // Queued URLs of draining shards go back right away rather than when a parser reaches them, so the shards
+        // are idle and can be handed over on the next heartbeat
+        List<String> withdrawn = new ArrayList<>();
+        urlsQueue.removeIf(url -> {
+            if (url != URL_POISON_PILL && !shardCoordinator.isActive(shardCoordinator.shardOf(url))) {
+                withdrawn.add(url);
+                return true;
             }
+            return false;
+        });
+        withdrawn.forEach(crawlScheduler::requeue);
+    }
 
-            parserExecutor.submit(this::parse);
+    // Other nodes may have written the menus of these shards since this node last held them, so what it remembers
+    // about their sheets is forgotten and the next export compares against the sheet itself
+    private void takeOver(Set<Integer> shards, List<ScheduleEntry> schedule) {
+        int forgotten = menuFingerprintStore.forget(url -> shards.contains(shardCoordinator.shardOf(url)));
+        if (forgotten > 0) {
+            log.info("Forgot the fingerprints of {} restaurants in shards {}", forgotten, shards);
+        }
+        crawlScheduler.restore(schedule);
+    }
 
-            produce();
+    // Only due URLs that fit into the queue are taken, so the scheduling thread never blocks on a full pipeline
+    private void dispatchDueUrls() {
+        for (String url : crawlScheduler.pollDue(urlsQueue.remainingCapacity())) {
+            if (!urlsQueue.offer(url)) {
+                crawlScheduler.fail(url);
+            }
         }
     }
 
-    private void parse() {
+    @PreDestroy
+    public void shutdown() {
+        producerExecutor.shutdownNow();
+
+        // Each stage drains what it already holds before the next stage is told to stop
         try {
-            String url = urlsQueue.take();
-            Restaurant restaurant = itemParser.parse(url);
-            restaurantsQueue.put(restaurant);
-        } catch (InvalidParseException e) {
-            System.err.println("An error occurred during the parsing of the restaurant: " + e.getMessage());
+            for (int i = 0; i < parserConsumers; i++) {
+                urlsQueue.put(URL_POISON_PILL);
+            }
+            ExecutorUtil.shutdown(parserExecutor, shutdownTimeoutSeconds);
+
+            for (int i = 0; i < exporterConsumers; i++) {
+                restaurantsQueue.put(RESTAURANT_POISON_PILL);
+            }
+            ExecutorUtil.shutdown(exporterExecutor, shutdownTimeoutSeconds);
+        } catch (InterruptedException e) {
+            parserExecutor.shutdownNow();
+            exporterExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void produce() {
+        try {
+            List<String> batch;
+            do {
+                batch = itemProducer.produceBatch(producerBatchSize);
+                batch.forEach(crawlScheduler::register);
+                forgetUnlistedUrls();
+            } while (!batch.isEmpty());
+        } catch (RuntimeException e) {
+            log.error("An error occurred while producing menu URLs: {}", e.getMessage());
+        } finally {
+            producing.set(false);
+        }
+    }
+
+    // Restaurants a whole pass over the source no longer listed are not crawled anymore
+    private void forgetUnlistedUrls() {
+        long completedPasses = itemProducer.getCompletedPasses();
+        if (completedPasses == producedPasses) {
+            return;
+        }
+        producedPasses = completedPasses;
+        int forgotten = crawlScheduler.retainListed(itemProducer::listedInLastPass);
+        if (forgotten > 0) {
+            log.info("Stopped crawling {} restaurants the source no longer lists", forgotten);
+        }
+    }
+
+    private void runParser() {
+        try {
+            while (true) {
+                String url = urlsQueue.take();
+                if (url == URL_POISON_PILL) {
+                    return;
+                }
+                if (!shardCoordinator.isActive(shardCoordinator.shardOf(url))) {
+                    // Its shard started draining after the last heartbeat withdrew queued URLs
+                    crawlScheduler.requeue(url);
+                    continue;
+                }
+
+                long start = System.nanoTime();
+                Restaurant restaurant = parse(url);
+                agentMetrics.recordStage("parse", start);
+                if (restaurant != null) {
+                    recordSnapshot(restaurant);
+                    // Blocks while the exporters are behind, which in turn stops URLs from being dispatched
+                    restaurantsQueue.put(restaurant);
+                } else {
+                    agentMetrics.error("parse");
+                    crawlScheduler.fail(url);
+                }
+            }
         } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Restaurant parse(String url) {
+        try {
+            return itemParser.parse(url);
+        } catch (InvalidParseException e) {
+            log.error("An error occurred during the parsing of the restaurant: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("An unexpected error occurred while parsing {}: {}", url, e.getMessage());
         }
+        return null;
+    }
 
-        exporterExecutor.submit(this::export);
+    // Scraped menus are kept locally whether or not the export succeeds
+    private void recordSnapshot(Restaurant restaurant) {
+        try {
+            menuSnapshotLog.append(restaurant);
+        } catch (IOException e) {
+            agentMetrics.error("snapshot");
+            log.error("Failed to record menu snapshot of {}: {}", restaurant.getName(), e.getMessage());
+        }
     }
 
-    private void export() {
+    private void runExporter() {
         try {
-            Restaurant restaurant = restaurantsQueue.take();
-            exporter.export(restaurant);
+            while (true) {
+                Restaurant restaurant = restaurantsQueue.take();
+                if (restaurant == RESTAURANT_POISON_PILL) {
+                    return;
+                }
+
+                export(restaurant);
+            }
         } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // An exception here would otherwise end the consumer, and the full restaurant queue would then block the parsers
+    private void export(Restaurant restaurant) {
+        try {
+            if (!shardCoordinator.holds(restaurant.getUrl())) {
+                // The lease lapsed during the crawl and another node may own the shard by now
+                crawlScheduler.requeue(restaurant.getUrl());
+                log.warn("Dropping the export of {}, its shard is no longer held by this node", restaurant.getName());
+                return;
+            }
+
+            // Buffering exporters call back once the batch is written, so the stage timer covers the write
+            exporter.export(restaurant, new ExportCompletion(System.nanoTime()));
+        } catch (RuntimeException e) {
+            agentMetrics.error("export");
+            log.error("An unexpected error occurred while exporting {}: {}", restaurant.getName(), e.getMessage());
+            crawlScheduler.fail(restaurant.getUrl());
+        }
+    }
+
+    // The crawl of a restaurant only ends once its menu has been written, so it stays in flight while it is buffered
+    @RequiredArgsConstructor
+    private class ExportCompletion implements ExportListener<Restaurant> {
+        private final long startNanos;
+
+        @Override
+        public void exported(Restaurant restaurant) {
+            agentMetrics.recordStage("export", startNanos);
+            crawlScheduler.complete(restaurant.getUrl(), MenuFingerprints.menuHash(restaurant.getDishes()));
+        }
+
+        @Override
+        public void failed(Restaurant restaurant, RuntimeException e) {
+            agentMetrics.error("export");
+            crawlScheduler.fail(restaurant.getUrl());
+            log.error("An error occurred during the export of {}: {}", restaurant.getName(), e.getMessage());
+        }
+
+        @Override
+        public void discarded(Restaurant restaurant) {
+            crawlScheduler.requeue(restaurant.getUrl());
         }
     }
 }
@@ -0,0 +1,159 @@
+package dev.haguel.expirenza_agent.main.impl;
+
+import dev.haguel.expirenza_agent.cluster.ShardCoordinator;
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import dev.haguel.expirenza_agent.main.BatchDataExporter;
+import dev.haguel.expirenza_agent.main.DataExporter;
+import dev.haguel.expirenza_agent.main.ExportListener;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Collects restaurants into batches for the sinks. Export listeners are called once the batch holding their restaurant
+// has been written, not when it is buffered. Leases are checked again right before the write, since a shard may have
+// gone to another node while its restaurants waited here.
+@Component
+@Primary
+@Slf4j
+public class BatchingMenuExporter implements DataExporter<Restaurant> {
+    private final BatchDataExporter<Restaurant> delegate;
+    private final ShardCoordinator shardCoordinator;
+
+    @Value("${exporter.batch.maxSize:25}")
+    private int maxSize;
+
+    @Value("${exporter.batch.windowMillis:10000}")
+    private long windowMillis;
+
+    private record PendingExport(Restaurant restaurant, ExportListener<Restaurant> listener) {}
+
+    private static final ExportListener<Restaurant> IGNORED = new ExportListener<>() {
+        @Override
+        public void exported(Restaurant restaurant) {
+        }
+
+        @Override
+        public void failed(Restaurant restaurant, RuntimeException e) {
+        }
+
+        @Override
+        public void discarded(Restaurant restaurant) {
+        }
+    };
+
+    private final List<PendingExport> buffer = new ArrayList<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private ScheduledExecutorService flushExecutor;
+
+    // The Sheets exporter is a batch exporter bean as well, so the fan-out over all configured sinks is asked for by name
+    public BatchingMenuExporter(@Qualifier("menuSinks") BatchDataExporter<Restaurant> delegate, ShardCoordinator shardCoordinator) {
+        this.delegate = delegate;
+        this.shardCoordinator = shardCoordinator;
+    }
+
+    @PostConstruct
+    public void init() {
+        flushExecutor = Executors.newSingleThreadScheduledExecutor();
+        flushExecutor.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void export(Restaurant restaurant) {
+        export(restaurant, IGNORED);
+    }
+
+    @Override
+    public void export(Restaurant restaurant, ExportListener<Restaurant> listener) {
+        List<PendingExport> batch = null;
+        synchronized (buffer) {
+            buffer.add(new PendingExport(restaurant, listener));
+            if (buffer.size() >= maxSize) {
+                batch = drainBuffer();
+            }
+        }
+
+        if (batch != null) {
+            write(batch);
+        }
+    }
+
+    public void flush() {
+        List<PendingExport> batch;
+        synchronized (buffer) {
+            batch = drainBuffer();
+        }
+        write(batch);
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        flushExecutor.shutdownNow();
+        flush();
+    }
+
+    private List<PendingExport> drainBuffer() {
+        List<PendingExport> batch = new ArrayList<>(buffer);
+        buffer.clear();
+        return batch;
+    }
+
+    // One batch at a time, so two batches never compute the same free rows of a sheet
+    private void write(List<PendingExport> batch) {
+        batch = withoutLostShards(batch);
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        RuntimeException failure = null;
+        writeLock.lock();
+        try {
+            delegate.exportAll(batch.stream().map(PendingExport::restaurant).toList());
+        } catch (RuntimeException e) {
+            failure = e;
+            log.error("An error occurred while exporting a batch of {} restaurants: {}", batch.size(), e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+
+        for (PendingExport export : batch) {
+            notify(export, failure);
+        }
+    }
+
+    // A throwing listener must neither keep the rest of the batch from being told nor end the periodic flush
+    private static void notify(PendingExport export, RuntimeException failure) {
+        try {
+            if (failure == null) {
+                export.listener().exported(export.restaurant());
+            } else {
+                export.listener().failed(export.restaurant(), failure);
+            }
+        } catch (RuntimeException e) {
+            log.error("An export listener of {} failed: {}", export.restaurant().getName(), e.getMessage());
+        }
+    }
+
+    private List<PendingExport> withoutLostShards(List<PendingExport> batch) {
+        List<PendingExport> held = new ArrayList<>(batch.size());
+        for (PendingExport export : batch) {
+            if (shardCoordinator.holds(export.restaurant().getUrl())) {
+                held.add(export);
+            } else {
+                log.warn("Dropping the buffered export of {}, its shard is no longer held by this node", export.restaurant().getName());
+                export.listener().discarded(export.restaurant());
+            }
+        }
+        return held;
+    }
+}
@@ -0,0 +1,245 @@
+package dev.haguel.expirenza_agent.main.impl;
+
+import dev.haguel.expirenza_agent.cluster.ShardCoordinator;
+import dev.haguel.expirenza_agent.cluster.ShardLeaseStore.ScheduleEntry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+// Every URL is tracked on every node, but due URLs are queued per shard and only the shards this node currently
+// crawls are polled. Without clustering all URLs fall into shard 0.
+@Component
+@RequiredArgsConstructor
+public class CrawlScheduler {
+    private final ShardCoordinator shardCoordinator;
+
+    @Value("${crawl.minIntervalSeconds:60}")
+    private long minIntervalSeconds;
+
+    @Value("${crawl.initialIntervalSeconds:180}")
+    private long initialIntervalSeconds;
+
+    @Value("${crawl.maxIntervalSeconds:3600}")
+    private long maxIntervalSeconds;
+
+    @Value("${crawl.retryDelaySeconds:60}")
+    private long retryDelaySeconds;
+
+    private static final double BACKOFF_FACTOR = 1.5;
+    private static final double SPEEDUP_FACTOR = 0.5;
+
+    private static class CrawlState {
+        private final String url;
+        private final int shard;
+        private long nextDueMillis;
+        private long intervalMillis;
+        private long contentHash;
+        private boolean crawled;
+        private boolean inFlight;
+        private int consecutiveFailures;
+
+        private CrawlState(String url, int shard, long nextDueMillis, long intervalMillis) {
+            this.url = url;
+            this.shard = shard;
+            this.nextDueMillis = nextDueMillis;
+            this.intervalMillis = intervalMillis;
+        }
+    }
+
+    private static class ShardQueue {
+        private final PriorityQueue<CrawlState> due = new PriorityQueue<>(Comparator.comparingLong(state -> state.nextDueMillis));
+        private int inFlight;
+    }
+
+    private final Map<String, CrawlState> states = new HashMap<>();
+    private final Map<Integer, ShardQueue> shardQueues = new HashMap<>();
+    private int inFlightCount;
+
+    public synchronized boolean register(String url) {
+        if (states.containsKey(url)) {
+            return false;
+        }
+
+        CrawlState state = new CrawlState(url, shardCoordinator.shardOf(url), System.currentTimeMillis(),
+                TimeUnit.SECONDS.toMillis(initialIntervalSeconds));
+        states.put(url, state);
+        shardQueue(state.shard).due.add(state);
+        return true;
+    }
+
+    // URLs still in flight are not in the due queue, so a slow crawl of a restaurant never overlaps with the next one.
+    // Across shards the most overdue URL goes first.
+    public synchronized List<String> pollDue(int maxCount) {
+        long now = System.currentTimeMillis();
+        List<String> dueUrls = new ArrayList<>();
+        List<ShardQueue> activeQueues = activeQueues();
+
+        while (dueUrls.size() < maxCount) {
+            ShardQueue mostOverdue = null;
+            for (ShardQueue queue : activeQueues) {
+                CrawlState head = queue.due.peek();
+                if (head != null && head.nextDueMillis <= now
+                        && (mostOverdue == null || head.nextDueMillis < mostOverdue.due.peek().nextDueMillis)) {
+                    mostOverdue = queue;
+                }
+            }
+            if (mostOverdue == null) {
+                break;
+            }
+
+            CrawlState state = mostOverdue.due.poll();
+            state.inFlight = true;
+            mostOverdue.inFlight++;
+            inFlightCount++;
+            dueUrls.add(state.url);
+        }
+        return dueUrls;
+    }
+
+    public synchronized void complete(String url, long contentHash) {
+        CrawlState state = states.get(url);
+        if (state == null || !state.inFlight) {
+            return;
+        }
+
+        long minIntervalMillis = TimeUnit.SECONDS.toMillis(minIntervalSeconds);
+        long maxIntervalMillis = TimeUnit.SECONDS.toMillis(maxIntervalSeconds);
+        if (state.crawled && state.contentHash != contentHash) {
+            state.intervalMillis = Math.max(minIntervalMillis, (long) (state.intervalMillis * SPEEDUP_FACTOR));
+        } else if (state.crawled) {
+            state.intervalMillis = Math.min(maxIntervalMillis, (long) (state.intervalMillis * BACKOFF_FACTOR));
+        }
+
+        state.contentHash = contentHash;
+        state.crawled = true;
+        state.consecutiveFailures = 0;
+        reschedule(state, System.currentTimeMillis() + state.intervalMillis);
+        shardCoordinator.recordSchedule(url, state.shard, state.nextDueMillis, state.intervalMillis, contentHash);
+    }
+
+    public synchronized void fail(String url) {
+        CrawlState state = states.get(url);
+        if (state == null || !state.inFlight) {
+            return;
+        }
+        state.consecutiveFailures++;
+        reschedule(state, System.currentTimeMillis() + retryDelayMillis(state.consecutiveFailures));
+    }
+
+    // Puts a crawl back without counting a failure, for results this node may no longer export
+    public synchronized void requeue(String url) {
+        CrawlState state = states.get(url);
+        if (state != null && state.inFlight) {
+            reschedule(state, System.currentTimeMillis());
+        }
+    }
+
+    // Takes over when the previous owner of a shard planned to crawl each URL next. URLs this node has not produced
+    // yet are registered right away.
+    public synchronized void restore(List<ScheduleEntry> entries) {
+        List<ShardQueue> touched = new ArrayList<>();
+        for (ScheduleEntry entry : entries) {
+            CrawlState state = states.get(entry.url());
+            if (state == null) {
+                state = new CrawlState(entry.url(), entry.shard(), entry.nextDueMillis(), entry.intervalMillis());
+                states.put(entry.url(), state);
+                shardQueue(state.shard).due.add(state);
+            } else if (state.inFlight) {
+                continue;
+            }
+            state.nextDueMillis = entry.nextDueMillis();
+            state.intervalMillis = entry.intervalMillis();
+            state.contentHash = entry.contentHash();
+            state.crawled = true;
+            touched.add(shardQueue(state.shard));
+        }
+
+        // Due times changed in place, so the heaps of the affected shards are rebuilt once
+        for (ShardQueue queue : touched.stream().distinct().toList()) {
+            List<CrawlState> queued = new ArrayList<>(queue.due);
+            queue.due.clear();
+            queue.due.addAll(queued);
+        }
+    }
+
+    // Forgets the URLs the source no longer lists. Crawls in flight are kept and looked at again after the next pass.
+    public synchronized int retainListed(Predicate<String> listed) {
+        int trackedCount = states.size();
+        states.values().removeIf(state -> !state.inFlight && !listed.test(state.url));
+        if (states.size() < trackedCount) {
+            for (ShardQueue queue : shardQueues.values()) {
+                queue.due.removeIf(state -> states.get(state.url) != state);
+            }
+        }
+        return trackedCount - states.size();
+    }
+
+    public synchronized boolean isShardBusy(int shard) {
+        ShardQueue queue = shardQueues.get(shard);
+        return queue != null && queue.inFlight > 0;
+    }
+
+    // How far behind schedule the most overdue restaurant of the shards this node crawls is
+    public synchronized long getCrawlLagMillis() {
+        long oldestDueMillis = Long.MAX_VALUE;
+        for (ShardQueue queue : activeQueues()) {
+            CrawlState head = queue.due.peek();
+            if (head != null) {
+                oldestDueMillis = Math.min(oldestDueMillis, head.nextDueMillis);
+            }
+        }
+        if (oldestDueMillis == Long.MAX_VALUE) {
+            return 0;
+        }
+        return Math.max(0, System.currentTimeMillis() - oldestDueMillis);
+    }
+
+    public synchronized int getTrackedCount() {
+        return states.size();
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlightCount;
+    }
+
+    private void reschedule(CrawlState state, long nextDueMillis) {
+        state.inFlight = false;
+        state.nextDueMillis = nextDueMillis;
+        ShardQueue queue = shardQueue(state.shard);
+        queue.inFlight--;
+        inFlightCount--;
+        queue.due.add(state);
+    }
+
+    private ShardQueue shardQueue(int shard) {
+        return shardQueues.computeIfAbsent(shard, key -> new ShardQueue());
+    }
+
+    private List<ShardQueue> activeQueues() {
+        List<ShardQueue> activeQueues = new ArrayList<>();
+        shardQueues.forEach((shard, queue) -> {
+            if (shardCoordinator.isActive(shard)) {
+                activeQueues.add(queue);
+            }
+        });
+        return activeQueues;
+    }
+
+    // Doubles with every consecutive failure up to the maximum interval. Half of the delay is random, so restaurants
+    // that failed together, e.g. while their host was down, come back spread out instead of all at once.
+    private long retryDelayMillis(int consecutiveFailures) {
+        long delayMillis = Math.min(TimeUnit.SECONDS.toMillis(maxIntervalSeconds),
+                TimeUnit.SECONDS.toMillis(retryDelaySeconds) << Math.min(consecutiveFailures - 1, 20));
+        return delayMillis / 2 + ThreadLocalRandom.current().nextLong(delayMillis / 2 + 1);
+    }
+}
@@ -0,0 +1,44 @@
+package dev.haguel.expirenza_agent.main.impl;
+
+import dev.haguel.expirenza_agent.main.ItemProducer;
+import dev.haguel.expirenza_agent.utils.LongHashSet;
+import dev.haguel.expirenza_agent.utils.MenuFingerprints;
+
+// Drops URLs the source repeats within a pass. Only a 64-bit hash of every URL is kept, and the set is emptied when
+// the source starts its next pass, so it also tells which URLs the last completed pass listed. Two URLs would have to
+// share a hash for one of them to be dropped, which is unlikely even for tens of millions of URLs.
+public class DistinctURLProducer extends ItemProducer<ItemProducer<?, String>, String> {
+    private final LongHashSet seenUrls = new LongHashSet();
+
+    public DistinctURLProducer(ItemProducer<?, String> source) {
+        super(source);
+    }
+
+    @Override
+    public String produce() {
+        String url;
+        while ((url = dataSource.produce()) != null) {
+            followPasses();
+            if (seenUrls.add(MenuFingerprints.textHash(url))) {
+                return url;
+            }
+        }
+        followPasses();
+        return null;
+    }
+
+    @Override
+    public boolean listedInLastPass(String url) {
+        return seenUrls.contains(MenuFingerprints.textHash(url));
+    }
+
+    private void followPasses() {
+        if (dataSource.getStartedPasses() > getStartedPasses()) {
+            seenUrls.clear();
+            passStarted();
+        }
+        if (dataSource.getCompletedPasses() > getCompletedPasses()) {
+            passCompleted();
+        }
+    }
+}
@@ -1,79 +1,218 @@
 package dev.haguel.expirenza_agent.main.impl;
 
-import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.JsonFactory;
-import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.services.sheets.v4.Sheets;
-import com.google.api.services.sheets.v4.SheetsScopes;
 import com.google.api.services.sheets.v4.model.*;
 import dev.haguel.expirenza_agent.entity.Dish;
 import dev.haguel.expirenza_agent.entity.DishCategory;
+import dev.haguel.expirenza_agent.entity.DishKey;
 import dev.haguel.expirenza_agent.entity.Restaurant;
-import dev.haguel.expirenza_agent.main.DataExporter;
+import dev.haguel.expirenza_agent.main.BatchDataExporter;
+import dev.haguel.expirenza_agent.sheets.DishRowIndex;
+import dev.haguel.expirenza_agent.sheets.SheetMetadataCache;
+import dev.haguel.expirenza_agent.sheets.SheetMetadataCache.SheetInfo;
+import dev.haguel.expirenza_agent.sheets.SheetWritePlan;
+import dev.haguel.expirenza_agent.sheets.SheetWritePlanner;
+import dev.haguel.expirenza_agent.sheets.SheetsClientProvider;
+import dev.haguel.expirenza_agent.store.MenuFingerprintStore;
+import dev.haguel.expirenza_agent.store.MenuFingerprintStore.MenuDiff;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.security.GeneralSecurityException;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
 
 @Component
-public class ExpirenzaMenuDishesExporter implements DataExporter<Restaurant> {
+@RequiredArgsConstructor
+@Slf4j
+public class ExpirenzaMenuDishesExporter implements BatchDataExporter<Restaurant> {
+    private final SheetsClientProvider sheetsClientProvider;
+    private final SheetMetadataCache sheetMetadataCache;
+    private final MenuFingerprintStore menuFingerprintStore;
+    // One row index per sheet, refilled on every read so a sheet's tables are allocated once rather than per export
+    private final Map<String, DishRowIndex> dishRowIndexes = new ConcurrentHashMap<>();
 
     @Value("${google.sheets.spreadsheetId}")
     private String spreadsheetId;
 
-    @Value("${google.sheets.serviceAccountKeyPath:/service-account-key.json}")
-    private String serviceAccountKeyPath;
+    @Value("${google.sheets.maxRequestBytes:2000000}")
+    private long maxRequestBytes;
 
-    private static final String APP_NAME = "Expirenza Menu Exporter";
-    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
-    private static final List<String> SCOPES = Collections.singletonList(SheetsScopes.SPREADSHEETS);
     private static final List<Object> HEADERS = List.of("Category", "SubCategory", "Name", "Description", "Price");
+    private static final List<Object> EMPTY_ROW = List.of("", "", "", "", "");
+    private static final int DEFAULT_ROW_COUNT = 1000;
 
-    private record PartitionedDishes(List<ValueRange> forUpdate, List<List<Object>> forAppend) {}
+    record PartitionedDishes(Map<Integer, List<Object>> forUpdate, List<List<Object>> forAppend) {}
+    record SheetRows(DishRowIndex existingDishRows, List<Integer> blankRows, int lastRow) {}
 
     @Override
-    public void export(Restaurant restaurant) {
+    public void exportAll(List<Restaurant> restaurants) {
+        if (restaurants.isEmpty()) {
+            return;
+        }
+
         try {
-            Sheets sheetsService = createSheetsService();
-            String sheetName = restaurant.getName();
+            // The latest result wins when a restaurant was parsed more than once within a batch
+            Map<String, Restaurant> restaurantsBySheet = new LinkedHashMap<>();
+            for (Restaurant restaurant : restaurants) {
+                restaurantsBySheet.put(restaurant.getName(), restaurant);
+            }
+
+            Map<String, MenuDiff> changedMenus = new LinkedHashMap<>();
+            for (Restaurant restaurant : restaurantsBySheet.values()) {
+                MenuDiff diff = menuFingerprintStore.diff(restaurant);
+                if (!diff.unchanged()) {
+                    changedMenus.put(restaurant.getName(), diff);
+                }
+            }
+            if (changedMenus.isEmpty()) {
+                return;
+            }
+
+            Sheets sheetsService = sheetsClientProvider.getSheets();
+            Set<String> missingSheets = sheetMetadataCache.findMissing(changedMenus.keySet());
+            List<String> existingSheets = changedMenus.keySet().stream()
+                    .filter(sheetName -> !missingSheets.contains(sheetName))
+                    .toList();
+            Map<String, SheetRows> sheetRows = getExistingDishRows(sheetsService, existingSheets);
+
+            List<SheetWritePlan> plans = new ArrayList<>();
+            Map<String, Integer> requiredRows = new LinkedHashMap<>();
+            for (Map.Entry<String, MenuDiff> entry : changedMenus.entrySet()) {
+                String sheetName = entry.getKey();
+                Restaurant restaurant = restaurantsBySheet.get(sheetName);
+                MenuDiff diff = entry.getValue();
+
+                SheetWritePlan plan = new SheetWritePlan(sheetName);
+                SheetRows rows = sheetRows.get(sheetName);
+                if (rows == null || rows.lastRow() == 0) {
+                    // A new sheet, or one emptied by hand, has none of the unchanged rows either, so it gets the header
+                    // and the whole menu
+                    diff = new MenuDiff(diff.menuHash(), false, true, restaurant.getDishes(), List.of());
+                    entry.setValue(diff);
+                    plan.write(1, HEADERS);
+                    rows = new SheetRows(rows != null ? rows.existingDishRows() : new DishRowIndex(), List.of(), 1);
+                }
+
+                requiredRows.put(sheetName, planSheet(plan, restaurant, diff, rows));
+                plans.add(plan);
+            }
+
+            prepareSheets(sheetsService, missingSheets, requiredRows);
+            // Usually a single request; large menus are split to stay below the request size limit
+            for (List<ValueRange> data : new SheetWritePlanner(maxRequestBytes).plan(plans)) {
+                performBatchUpdate(sheetsService, data);
+            }
+
+            changedMenus.forEach((sheetName, diff) -> menuFingerprintStore.commit(restaurantsBySheet.get(sheetName), diff));
+        } catch (IOException e) {
+            // Fingerprints are only committed after a successful write, so a retried batch writes the same changes again
+            throw new UncheckedIOException("Google Sheets export of " + restaurants.size() + " restaurants failed: " + e.getMessage(), e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not create the Google Sheets client", e);
+        }
+    }
 
-            ensureSheetExists(sheetsService, sheetName);
+    // Rows of removed dishes and rows left blank by earlier exports take new dishes before the sheet is extended.
+    // Returns the last row the sheet needs.
+    private int planSheet(SheetWritePlan plan, Restaurant restaurant, MenuDiff diff, SheetRows rows) {
+        PartitionedDishes dishes = partitionDishes(diff.changedDishes(), rows.existingDishRows());
+        dishes.forUpdate().forEach(plan::write);
 
-            Map<String, Integer> existingDishRowMap = getExistingDishRows(sheetsService, sheetName);
-            PartitionedDishes dishes = partitionDishes(restaurant.getDishes(), existingDishRowMap, sheetName);
+        List<Integer> removedRows = diff.firstExport()
+                ? unknownRows(restaurant, rows)
+                : removedDishRows(diff, rows.existingDishRows());
+        TreeSet<Integer> freeRows = new TreeSet<>(rows.blankRows());
+        freeRows.addAll(removedRows);
 
-            if (!dishes.forUpdate().isEmpty()) {
-                performBatchUpdate(sheetsService, dishes.forUpdate());
+        int lastRow = rows.lastRow();
+        for (List<Object> newRow : dishes.forAppend()) {
+            Integer freeRow = freeRows.pollFirst();
+            plan.write(freeRow != null ? freeRow : ++lastRow, newRow);
+        }
+        // Blank rows are empty already; only rows still holding a removed dish need clearing
+        for (int removedRow : removedRows) {
+            if (freeRows.contains(removedRow)) {
+                plan.write(removedRow, EMPTY_ROW);
             }
-            if (!dishes.forAppend().isEmpty()) {
-                performAppend(sheetsService, sheetName, dishes.forAppend());
+        }
+
+        plan.setUnchangedRows(unchangedRows(restaurant, diff, rows));
+        return lastRow;
+    }
+
+    // A removed key is no longer on the menu, so no changed dish can be written to its row
+    private List<Integer> removedDishRows(MenuDiff diff, DishRowIndex existingDishRows) {
+        List<Integer> removedRows = new ArrayList<>();
+        for (DishKey removedDish : diff.removedDishes()) {
+            int rowIndex = existingDishRows.get(removedDish);
+            if (rowIndex != DishRowIndex.NO_ROW) {
+                removedRows.add(rowIndex);
             }
+        }
+        return removedRows;
+    }
+
+    // Without fingerprints the removed dishes are not known, so every filled row that holds no dish of the menu is
+    // cleared, including rows another node wrote while it held the restaurant's shard
+    private List<Integer> unknownRows(Restaurant restaurant, SheetRows rows) {
+        BitSet keptRows = new BitSet(rows.lastRow() + 1);
+        for (Dish dish : restaurant.getDishes()) {
+            keptRows.set(rows.existingDishRows().get(dish));
+        }
+        rows.blankRows().forEach(keptRows::set);
 
-        } catch (IOException | GeneralSecurityException e) {
-            System.err.println("An error occurred during Google Sheets export: " + e.getMessage());
-            e.printStackTrace();
+        List<Integer> unknownRows = new ArrayList<>();
+        // Row 1 is the header
+        for (int row = keptRows.nextClearBit(2); row <= rows.lastRow(); row = keptRows.nextClearBit(row + 1)) {
+            unknownRows.add(row);
         }
+        return unknownRows;
     }
 
-    private PartitionedDishes partitionDishes(List<Dish> dishes, Map<String, Integer> existingDishRowMap, String sheetName) {
-        List<ValueRange> updates = new ArrayList<>();
+    // Lets the planner rewrite unchanged dishes to join blocks of changed rows. Dishes listed twice under the same key
+    // share a row, so the content of such a row is not known for certain and it is never rewritten.
+    private IntFunction<List<Object>> unchangedRows(Restaurant restaurant, MenuDiff diff, SheetRows rows) {
+        Set<Dish> changedDishes = Collections.newSetFromMap(new IdentityHashMap<>());
+        changedDishes.addAll(diff.changedDishes());
+
+        Dish[] dishesByRow = new Dish[rows.lastRow() + 1];
+        BitSet sharedRows = new BitSet();
+        for (Dish dish : restaurant.getDishes()) {
+            int rowIndex = rows.existingDishRows().get(dish);
+            if (rowIndex == DishRowIndex.NO_ROW) {
+                continue;
+            }
+            if (dishesByRow[rowIndex] != null) {
+                sharedRows.set(rowIndex);
+            }
+            dishesByRow[rowIndex] = dish;
+        }
+
+        return rowIndex -> {
+            if (rowIndex >= dishesByRow.length || sharedRows.get(rowIndex)) {
+                return null;
+            }
+            Dish dish = dishesByRow[rowIndex];
+            return dish != null && !changedDishes.contains(dish) ? dishToRowData(dish) : null;
+        };
+    }
+
+    PartitionedDishes partitionDishes(List<Dish> dishes, DishRowIndex existingDishRows) {
+        Map<Integer, List<Object>> updates = new HashMap<>();
         List<List<Object>> newRows = new ArrayList<>();
 
         for (Dish dish : dishes) {
-            Integer rowIndex = existingDishRowMap.get(dish.getName());
+            int rowIndex = existingDishRows.get(dish);
             List<Object> rowData = dishToRowData(dish);
 
-            if (rowIndex != null) {
-                String updateRange = String.format("%s!A%d", sheetName, rowIndex);
-                updates.add(new ValueRange().setRange(updateRange).setValues(List.of(rowData)));
+            if (rowIndex != DishRowIndex.NO_ROW) {
+                updates.put(rowIndex, rowData);
             } else {
                 newRows.add(rowData);
             }
@@ -82,62 +221,105 @@ public class ExpirenzaMenuDishesExporter implements DataExporter<Restaurant> {
         return new PartitionedDishes(updates, newRows);
     }
 
-    private Sheets createSheetsService() throws IOException, GeneralSecurityException {
-        final NetHttpTransport httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-        InputStream credentialsStream = ExpirenzaMenuDishesExporter.class.getResourceAsStream(serviceAccountKeyPath);
-        if (credentialsStream == null) {
-            throw new FileNotFoundException("Service account key not found: " + serviceAccountKeyPath);
+    // Creates missing sheets and grows full ones in a single structural request, since value writes cannot extend the grid
+    private void prepareSheets(Sheets service, Set<String> missingSheets, Map<String, Integer> requiredRows) throws IOException {
+        List<Request> requests = new ArrayList<>();
+        List<String> addedSheets = new ArrayList<>();
+
+        for (Map.Entry<String, Integer> entry : requiredRows.entrySet()) {
+            String sheetName = entry.getKey();
+            int rowsNeeded = entry.getValue();
+
+            if (missingSheets.contains(sheetName)) {
+                SheetProperties properties = new SheetProperties()
+                        .setTitle(sheetName)
+                        .setGridProperties(new GridProperties().setRowCount(Math.max(DEFAULT_ROW_COUNT, rowsNeeded)));
+                requests.add(new Request().setAddSheet(new AddSheetRequest().setProperties(properties)));
+                addedSheets.add(sheetName);
+                continue;
+            }
+
+            SheetInfo sheet = sheetMetadataCache.getCached(sheetName).orElse(null);
+            if (sheet != null && rowsNeeded > sheet.rowCount()) {
+                requests.add(new Request().setAppendDimension(new AppendDimensionRequest()
+                        .setSheetId(sheet.sheetId())
+                        .setDimension("ROWS")
+                        .setLength(rowsNeeded - sheet.rowCount())));
+                sheetMetadataCache.put(sheetName, new SheetInfo(sheet.sheetId(), rowsNeeded));
+            }
         }
 
-        GoogleCredential credential = GoogleCredential.fromStream(credentialsStream).createScoped(SCOPES);
-        return new Sheets.Builder(httpTransport, JSON_FACTORY, credential)
-                .setApplicationName(APP_NAME)
-                .build();
+        if (requests.isEmpty()) {
+            return;
+        }
+
+        BatchUpdateSpreadsheetRequest batchUpdateReq = new BatchUpdateSpreadsheetRequest().setRequests(requests);
+        BatchUpdateSpreadsheetResponse response = sheetsClientProvider.execute(service.spreadsheets().batchUpdate(spreadsheetId, batchUpdateReq));
+
+        for (Response reply : response.getReplies()) {
+            if (reply.getAddSheet() != null) {
+                SheetProperties properties = reply.getAddSheet().getProperties();
+                sheetMetadataCache.put(properties.getTitle(), SheetMetadataCache.toSheetInfo(properties));
+            }
+        }
+        addedSheets.forEach(sheetName -> log.info("Created new sheet with name: {}", sheetName));
     }
 
-    private void ensureSheetExists(Sheets service, String sheetName) throws IOException {
-        Spreadsheet spreadsheet = service.spreadsheets().get(spreadsheetId).setFields("sheets.properties.title").execute();
-        boolean sheetExists = spreadsheet.getSheets().stream()
-                .anyMatch(s -> sheetName.equals(s.getProperties().getTitle()));
+    // Reads the category, subcategory and name columns, which together identify a dish on the sheet
+    private Map<String, SheetRows> getExistingDishRows(Sheets service, List<String> sheetNames) throws IOException {
+        if (sheetNames.isEmpty()) {
+            return Collections.emptyMap();
+        }
 
-        if (!sheetExists) {
-            AddSheetRequest addSheetRequest = new AddSheetRequest().setProperties(new SheetProperties().setTitle(sheetName));
-            Request request = new Request().setAddSheet(addSheetRequest);
-            BatchUpdateSpreadsheetRequest batchUpdateReq = new BatchUpdateSpreadsheetRequest().setRequests(List.of(request));
-            service.spreadsheets().batchUpdate(spreadsheetId, batchUpdateReq).execute();
+        List<String> ranges = sheetNames.stream().map(sheetName -> SheetWritePlanner.a1Range(sheetName, "A:C")).toList();
+        BatchGetValuesResponse response = sheetsClientProvider.execute(service.spreadsheets().values()
+                .batchGet(spreadsheetId)
+                .setRanges(ranges));
 
-            performAppend(service, sheetName, List.of(HEADERS));
-            System.out.println("Created new sheet with name: " + sheetName);
+        Map<String, SheetRows> sheetRows = new HashMap<>();
+        List<ValueRange> valueRanges = response.getValueRanges();
+        for (int i = 0; i < sheetNames.size(); i++) {
+            List<List<Object>> values = valueRanges.get(i).getValues();
+            DishRowIndex index = dishRowIndexes.computeIfAbsent(sheetNames.get(i), sheetName -> new DishRowIndex());
+            sheetRows.put(sheetNames.get(i), toSheetRows(values, index));
         }
+        return sheetRows;
     }
 
-    private Map<String, Integer> getExistingDishRows(Sheets service, String sheetName) throws IOException {
-        String range = sheetName + "!C:C";
-        ValueRange response = service.spreadsheets().values().get(spreadsheetId, range).execute();
-        List<List<Object>> values = response.getValues();
-
+    SheetRows toSheetRows(List<List<Object>> values, DishRowIndex existingDishRows) {
+        existingDishRows.clear(values != null ? values.size() : 0);
         if (values == null || values.isEmpty()) {
-            return Collections.emptyMap();
+            return new SheetRows(existingDishRows, List.of(), 0);
         }
 
-        return IntStream.range(0, values.size())
-                .filter(i -> !values.get(i).isEmpty() && values.get(i).get(0) != null)
-                .boxed()
-                .collect(Collectors.toMap(
-                        i -> values.get(i).get(0).toString(),
-                        i -> i + 1,
-                        (first, second) -> first
-                ));
+        List<Integer> blankRows = new ArrayList<>();
+        for (int i = 0; i < values.size(); i++) {
+            List<Object> row = values.get(i);
+            // The API leaves out trailing empty cells, so a row without a name is shorter than three cells
+            String name = cellText(row, 2);
+            if (!name.isEmpty()) {
+                existingDishRows.putIfAbsent(cellText(row, 0), cellText(row, 1), name, i + 1);
+            } else if (i > 0) {
+                // The header row is never reused, even if it was cleared by hand
+                blankRows.add(i + 1);
+            }
+        }
+        return new SheetRows(existingDishRows, blankRows, values.size());
+    }
+
+    private static String cellText(List<Object> row, int column) {
+        Object cell = column < row.size() ? row.get(column) : null;
+        return cell != null ? cell.toString() : "";
     }
 
     private List<Object> dishToRowData(Dish dish) {
         DishCategory category = dish.getDishCategory();
-        String cat = category != null ? category.getCategory() : "";
-        String sub = category != null ? category.getSubCategory() : "";
+        String cat = category != null && category.getCategory() != null ? category.getCategory() : "";
+        String sub = category != null && category.getSubCategory() != null ? category.getSubCategory() : "";
         String name = dish.getName() != null ? dish.getName() : "";
         String desc = dish.getDescription() != null ? dish.getDescription() : "";
         String price = dish.getPrice() != null ? dish.getPrice().toPlainString() : "0";
-        
+
         return List.of(cat, sub, name, desc, price);
     }
 
@@ -145,14 +327,6 @@ public class ExpirenzaMenuDishesExporter implements DataExporter<Restaurant> {
         BatchUpdateValuesRequest body = new BatchUpdateValuesRequest()
                 .setValueInputOption("RAW")
                 .setData(updates);
-        service.spreadsheets().values().batchUpdate(spreadsheetId, body).execute();
-    }
-
-    private void performAppend(Sheets service, String sheetName, List<List<Object>> rows) throws IOException {
-        ValueRange body = new ValueRange().setValues(rows);
-        service.spreadsheets().values()
-                .append(spreadsheetId, sheetName, body)
-                .setValueInputOption("RAW")
-                .execute();
+        sheetsClientProvider.execute(service.spreadsheets().values().batchUpdate(spreadsheetId, body));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,276 @@
+package dev.haguel.expirenza_agent.main.impl;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.PageCategory;
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import dev.haguel.expirenza_agent.exception.InvalidParseException;
+import dev.haguel.expirenza_agent.main.ItemParser;
+import dev.haguel.expirenza_agent.metrics.AgentMetrics;
+import dev.haguel.expirenza_agent.resilience.CircuitBreaker;
+import dev.haguel.expirenza_agent.resilience.ResilienceRegistry;
+import dev.haguel.expirenza_agent.store.PageResponseCache;
+import dev.haguel.expirenza_agent.store.PageResponseCache.CachedPage;
+import dev.haguel.expirenza_agent.utils.MenuFingerprints;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+@Component
+@Primary
+@RequiredArgsConstructor
+@Slf4j
+public class ExpirenzaMenuHttpParser implements ItemParser<String, Restaurant> {
+    private final ExpirenzaMenuURLParser browserParser;
+    private final MenuPageExtractor menuPageExtractor;
+    private final AgentMetrics agentMetrics;
+    private final ResilienceRegistry resilienceRegistry;
+    private final PageResponseCache pageResponseCache;
+
+    @Value("${parser.http.enabled:true}")
+    private boolean enabled;
+
+    @Value("${parser.http.timeoutSeconds:10}")
+    private long timeoutSeconds;
+
+    @Value("${parser.categoryConcurrency:4}")
+    private int categoryConcurrency;
+
+    @Value("${parser.http.userAgent:Mozilla/5.0 (compatible; ExpirenzaAgent/1.0)}")
+    private String userAgent;
+
+    private HttpClient httpClient;
+
+    // The body of a page that changed since it was cached, or the cache entry of one that did not
+    private record PageResponse(String body, CachedPage unchanged, String etag, String lastModified, long bodyHash) {}
+
+    @PostConstruct
+    public void init() {
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(timeoutSeconds))
+                .build();
+    }
+
+    @Override
+    public Restaurant parse(String url) throws InvalidParseException {
+        if (!enabled) {
+            return browserParser.parse(url);
+        }
+
+        String host = URI.create(url).getHost();
+        if (resilienceRegistry.circuitBreaker(host).isOpen()) {
+            throw new InvalidParseException("Circuit breaker for " + host + " is open, skipping " + url);
+        }
+
+        Optional<PageResponse> response = fetchPage(url, url).join();
+        if (response.isEmpty()) {
+            return browserParser.parse(url);
+        }
+
+        String name;
+        List<PageCategory> categories;
+        CachedPage unchanged = response.get().unchanged();
+        if (unchanged != null) {
+            name = unchanged.title();
+            categories = unchanged.links();
+        } else {
+            Document page = Jsoup.parse(response.get().body(), url);
+            if (!menuPageExtractor.hasRestaurantMarkup(page)) {
+                return browserParser.parse(url);
+            }
+            name = menuPageExtractor.extractRestaurantName(page);
+            categories = menuPageExtractor.extractCategories(page);
+            if (!categories.isEmpty()) {
+                cache(url, response.get(), name, categories, List.of());
+            }
+        }
+        if (categories.isEmpty()) {
+            throw new InvalidParseException("No menu categories found for URL: " + url);
+        }
+
+        return Restaurant.builder()
+                .url(url)
+                .name(name)
+                .dishes(parseCategories(categories))
+                .build();
+    }
+
+    private List<Dish> parseCategories(List<PageCategory> categories) throws InvalidParseException {
+        Semaphore inFlight = new Semaphore(Math.max(1, categoryConcurrency));
+        List<CompletableFuture<Optional<List<Dish>>>> pendingCategories = new ArrayList<>();
+
+        for (PageCategory category : categories) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InvalidParseException("Interrupted while fetching category pages");
+            }
+            pendingCategories.add(fetchPage(category.url(), categoryKey(category))
+                    .thenApply(response -> response.flatMap(page -> extractDishes(page, category)))
+                    .exceptionally(e -> Optional.empty())
+                    .whenComplete((dishes, e) -> inFlight.release()));
+        }
+
+        List<Dish> dishes = new ArrayList<>();
+        for (int i = 0; i < categories.size(); i++) {
+            Optional<List<Dish>> categoryDishes = pendingCategories.get(i).join();
+            if (categoryDishes.isPresent()) {
+                dishes.addAll(categoryDishes.get());
+            } else {
+                dishes.addAll(browserParser.parseCategory(categories.get(i)));
+            }
+        }
+        return dishes;
+    }
+
+    // An unchanged page hands back the dishes extracted from it before, without parsing it
+    private Optional<List<Dish>> extractDishes(PageResponse response, PageCategory category) {
+        if (response.unchanged() != null) {
+            return Optional.of(response.unchanged().dishes());
+        }
+
+        Document document = Jsoup.parse(response.body(), category.url());
+        if (!menuPageExtractor.hasDishMarkup(document)) {
+            return Optional.empty();
+        }
+        List<Dish> dishes = menuPageExtractor.extractDishes(document, category.name());
+        cache(categoryKey(category), response, null, List.of(), dishes);
+        return Optional.of(dishes);
+    }
+
+    private void cache(String key, PageResponse response, String title, List<PageCategory> links, List<Dish> dishes) {
+        pageResponseCache.put(key, new CachedPage(response.etag(), response.lastModified(), response.bodyHash(), title, links, dishes));
+    }
+
+    // Dishes carry the category name from the restaurant page, so a renamed category is extracted again
+    private static String categoryKey(PageCategory category) {
+        return category.url() + " " + category.name();
+    }
+
+    // Waits for the host's rate limiter on the calling thread; retries are delayed on the client's executor instead
+    private CompletableFuture<Optional<PageResponse>> fetchPage(String url, String cacheKey) {
+        String host = URI.create(url).getHost();
+        try {
+            resilienceRegistry.siteRateLimiter(host).acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return fetchPage(url, host, cacheKey, pageResponseCache.get(cacheKey).orElse(null), 1);
+    }
+
+    private CompletableFuture<Optional<PageResponse>> fetchPage(String url, String host, String cacheKey, CachedPage cached, int attempt) {
+        CircuitBreaker circuitBreaker = resilienceRegistry.circuitBreaker(host);
+        if (!circuitBreaker.tryAcquire()) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(timeoutSeconds))
+                .header("User-Agent", userAgent)
+                .header("Accept", "text/html")
+                .GET();
+        if (cached != null && cached.etag() != null) {
+            requestBuilder.header("If-None-Match", cached.etag());
+        }
+        if (cached != null && cached.lastModified() != null) {
+            requestBuilder.header("If-Modified-Since", cached.lastModified());
+        }
+
+        return httpClient.sendAsync(requestBuilder.build(), HttpResponse.BodyHandlers.ofString())
+                .handle((response, e) -> {
+                    if (e != null) {
+                        circuitBreaker.onFailure();
+                        agentMetrics.error("fetch");
+                        if (attempt < resilienceRegistry.getMaxAttempts()) {
+                            return retryLater(url, host, cacheKey, cached, attempt, 0);
+                        }
+                        log.warn("HTTP fetch failed for {}, falling back to the browser: {}", url, e.getMessage());
+                        return CompletableFuture.completedFuture(Optional.<PageResponse>empty());
+                    }
+
+                    int statusCode = response.statusCode();
+                    if (statusCode >= 500) {
+                        circuitBreaker.onFailure();
+                    } else {
+                        circuitBreaker.onSuccess();
+                    }
+                    if (statusCode == 429) {
+                        resilienceRegistry.siteRateLimiter(host).onThrottle();
+                    }
+                    if (ResilienceRegistry.isRetryableStatus(statusCode) && attempt < resilienceRegistry.getMaxAttempts()) {
+                        return retryLater(url, host, cacheKey, cached, attempt, retryAfterMillis(response));
+                    }
+                    if (statusCode == 304 && cached != null) {
+                        resilienceRegistry.siteRateLimiter(host).onSuccess();
+                        agentMetrics.pageFetched("http-not-modified");
+                        return CompletableFuture.completedFuture(Optional.of(new PageResponse(null, cached, cached.etag(),
+                                cached.lastModified(), cached.bodyHash())));
+                    }
+                    if (statusCode / 100 != 2) {
+                        return CompletableFuture.completedFuture(Optional.<PageResponse>empty());
+                    }
+
+                    resilienceRegistry.siteRateLimiter(host).onSuccess();
+                    return CompletableFuture.completedFuture(Optional.of(toPageResponse(response, cacheKey, cached)));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    // Sites without validators, or with ones that change on every response, are compared by body hash
+    private PageResponse toPageResponse(HttpResponse<String> response, String cacheKey, CachedPage cached) {
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+        long bodyHash = MenuFingerprints.textHash(response.body());
+        if (cached == null || cached.bodyHash() != bodyHash) {
+            agentMetrics.pageFetched("http");
+            return new PageResponse(response.body(), null, etag, lastModified, bodyHash);
+        }
+
+        agentMetrics.pageFetched("http-unchanged");
+        if (!Objects.equals(etag, cached.etag()) || !Objects.equals(lastModified, cached.lastModified())) {
+            pageResponseCache.put(cacheKey, new CachedPage(etag, lastModified, bodyHash, cached.title(), cached.links(), cached.dishes()));
+        }
+        return new PageResponse(null, cached, etag, lastModified, bodyHash);
+    }
+
+    // Honours Retry-After when the site sends one, and still queues behind the host's rate limiter
+    private CompletableFuture<Optional<PageResponse>> retryLater(String url, String host, String cacheKey, CachedPage cached,
+                                                                 int attempt, long minDelayMillis) {
+        agentMetrics.retry("site");
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(minDelayMillis, resilienceRegistry.backoffMillis(attempt)))
+                + resilienceRegistry.siteRateLimiter(host).reserve();
+        Executor delayedExecutor = CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS);
+        return CompletableFuture.supplyAsync(() -> fetchPage(url, host, cacheKey, cached, attempt + 1), delayedExecutor)
+                .thenCompose(Function.identity());
+    }
+
+    private long retryAfterMillis(HttpResponse<?> response) {
+        return response.headers().firstValue("Retry-After")
+                .filter(value -> !value.isEmpty() && value.chars().allMatch(Character::isDigit))
+                .map(seconds -> Math.min(resilienceRegistry.getMaxDelayMillis(), TimeUnit.SECONDS.toMillis(Long.parseLong(seconds))))
+                .orElse(0L);
+    }
+}
@@ -1,166 +1,247 @@
 package dev.haguel.expirenza_agent.main.impl;
 
 import dev.haguel.expirenza_agent.entity.Dish;
-import dev.haguel.expirenza_agent.entity.DishCategory;
+import dev.haguel.expirenza_agent.entity.PageCategory;
 import dev.haguel.expirenza_agent.entity.Restaurant;
+import dev.haguel.expirenza_agent.exception.CircuitOpenException;
 import dev.haguel.expirenza_agent.exception.InvalidParseException;
 import dev.haguel.expirenza_agent.main.ItemParser;
-import io.github.bonigarcia.wdm.WebDriverManager;
-import jakarta.annotation.PreDestroy;
+import dev.haguel.expirenza_agent.metrics.AgentMetrics;
+import dev.haguel.expirenza_agent.resilience.CircuitBreaker;
+import dev.haguel.expirenza_agent.resilience.ResilienceRegistry;
+import dev.haguel.expirenza_agent.webdriver.WebDriverKit;
+import dev.haguel.expirenza_agent.webdriver.WebDriverPool;
+import dev.haguel.expirenza_agent.utils.ExecutionMode;
+import dev.haguel.expirenza_agent.utils.ExecutorUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.openqa.selenium.By;
-import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebDriverException;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.WebDriverWait;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
-import java.time.Duration;
+import java.net.URI;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 
 @Component
+@RequiredArgsConstructor
+@Slf4j
 public class ExpirenzaMenuURLParser implements ItemParser<String, Restaurant> {
+    private final WebDriverPool webDriverPool;
+    private final MenuPageExtractor menuPageExtractor;
+    private final AgentMetrics agentMetrics;
+    private final ResilienceRegistry resilienceRegistry;
 
-    private final List<WebDriverKit> allDrivers = Collections.synchronizedList(new ArrayList<>());
-    private final ThreadLocal<WebDriverKit> driverThreadLocal = ThreadLocal.withInitial(this::createWebDriverKit);
+    @Value("${agent.execution.mode:PLATFORM}")
+    private ExecutionMode executionMode;
 
-    private record PageCategory(String name, String url) {}
-    private record WebDriverKit(WebDriver webDriver, WebDriverWait webDriverWait) {}
+    @Value("${parser.categoryConcurrency:4}")
+    private int categoryConcurrency;
+
+    private ExecutorService categoryExecutor;
+
+    @PostConstruct
+    public void init() {
+        categoryExecutor = ExecutorUtil.newElasticExecutor(executionMode);
+        ExecutorUtil.addShutdownHook(categoryExecutor);
+    }
 
     @Override
     public Restaurant parse(String url) throws InvalidParseException {
-        return scrapeRestaurantData(driverThreadLocal.get(), url);
+        WebDriverKit kit = leaseWebDriverKit(url);
+        try {
+            Restaurant restaurant = scrapeRestaurantData(kit, url);
+            webDriverPool.release(kit);
+            return restaurant;
+        } catch (InvalidParseException e) {
+            webDriverPool.release(kit);
+            throw e;
+        } catch (CircuitOpenException e) {
+            webDriverPool.release(kit);
+            throw new InvalidParseException(e.getMessage());
+        } catch (WebDriverException e) {
+            webDriverPool.invalidate(kit);
+            throw new InvalidParseException("A WebDriver error occurred while parsing " + url);
+        } catch (RuntimeException e) {
+            webDriverPool.invalidate(kit);
+            throw e;
+        }
     }
 
-    @PreDestroy
-    public void cleanup() {
-        for (WebDriverKit kit : allDrivers) {
-            try {
-                kit.webDriver.quit();
-            } catch (Exception e) {
-                System.err.println("Error quitting a WebDriver instance: " + e.getMessage());
-            }
+    public List<Dish> parseCategory(PageCategory category) throws InvalidParseException {
+        WebDriverKit kit = leaseWebDriverKit(category.url());
+        try {
+            List<Dish> dishes = scrapeDishesFromCategoryPage(kit, category);
+            webDriverPool.release(kit);
+            return dishes;
+        } catch (CircuitOpenException e) {
+            webDriverPool.release(kit);
+            throw new InvalidParseException(e.getMessage());
+        } catch (WebDriverException e) {
+            webDriverPool.invalidate(kit);
+            throw new InvalidParseException("A WebDriver error occurred while parsing " + category.url());
+        } catch (RuntimeException e) {
+            webDriverPool.invalidate(kit);
+            throw e;
         }
     }
 
-    private WebDriverKit createWebDriverKit() {
-        WebDriverManager.chromedriver().setup();
-        ChromeOptions options = new ChromeOptions();
-        options.addArguments("--headless", "--disable-gpu", "--no-sandbox", "--disable-dev-shm-usage");
-
-        WebDriver driver = new ChromeDriver(options);
-        WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(20));
+    // Fails fast while the host's breaker is open instead of tying up a browser session with a page that will time out.
+    // Only loading a page takes a permit, so a half-open breaker's probe is never held by an idle lease.
+    private WebDriverKit leaseWebDriverKit(String url) throws InvalidParseException {
+        String host = URI.create(url).getHost();
+        if (resilienceRegistry.circuitBreaker(host).isOpen()) {
+            throw new InvalidParseException("Circuit breaker for " + host + " is open, skipping " + url);
+        }
 
-        WebDriverKit kit = new WebDriverKit(driver, wait);
-        allDrivers.add(kit);
-        return kit;
+        try {
+            return webDriverPool.lease();
+        } catch (TimeoutException e) {
+            throw new InvalidParseException("No WebDriver session available to parse " + url + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InvalidParseException("Interrupted while waiting for a WebDriver session to parse " + url);
+        }
     }
 
     private Restaurant scrapeRestaurantData(WebDriverKit kit, String baseUrl) throws InvalidParseException {
-        try {
-            kit.webDriver.get(baseUrl);
-            Restaurant.RestaurantBuilder restaurantBuilder = Restaurant.builder();
-            List<Dish> dishes = new ArrayList<>();
+        loadPage(kit, baseUrl);
+        Restaurant.RestaurantBuilder restaurantBuilder = Restaurant.builder().url(baseUrl);
 
-            String restaurantName = scrapeRestaurantName(kit);
-            restaurantBuilder.name(restaurantName);
+        String restaurantName = scrapeRestaurantName(kit);
+        restaurantBuilder.name(restaurantName);
 
-            List<PageCategory> categories = scrapeMenuCategories(kit);
-            if (categories.isEmpty()) {
-                throw new InvalidParseException("No menu categories found for URL: " + baseUrl);
-            }
-
-            for (PageCategory category : categories) {
-                dishes.addAll(scrapeDishesFromCategoryPage(kit, category));
-            }
-
-            return restaurantBuilder.dishes(dishes).build();
-        } catch (WebDriverException e) {
-            throw new InvalidParseException("A WebDriver error occurred while parsing " + baseUrl);
+        List<PageCategory> categories = scrapeMenuCategories(kit);
+        if (categories.isEmpty()) {
+            throw new InvalidParseException("No menu categories found for URL: " + baseUrl);
         }
-    }
 
-    private String scrapeRestaurantName(WebDriverKit kit) {
-        By titleSelector = By.cssSelector("h2.title");
-        kit.webDriverWait.until(ExpectedConditions.visibilityOfElementLocated(titleSelector));
-        return kit.webDriver.findElement(titleSelector).getText().trim();
+        return restaurantBuilder.dishes(scrapeCategories(kit, categories)).build();
     }
 
-    private List<PageCategory> scrapeMenuCategories(WebDriverKit kit) {
-        By menuLinkSelector = By.cssSelector("a.main-menu-item");
-        kit.webDriverWait.until(ExpectedConditions.visibilityOfElementLocated(menuLinkSelector));
+    private List<Dish> scrapeCategories(WebDriverKit kit, List<PageCategory> categories) throws InvalidParseException {
+        AtomicReferenceArray<List<Dish>> results = new AtomicReferenceArray<>(categories.size());
+        AtomicInteger nextCategory = new AtomicInteger();
+
+        // Helpers only take sessions that are running and free right now, so a restaurant never waits on its own
+        // fan-out, neither for a busy session nor for a browser to start
+        List<Future<?>> helpers = new ArrayList<>();
+        int helperCount = Math.min(categoryConcurrency, categories.size()) - 1;
+        for (int i = 0; i < helperCount; i++) {
+            Optional<WebDriverKit> helperKit = webDriverPool.tryLeaseIdle();
+            if (helperKit.isEmpty()) {
+                break;
+            }
+            helpers.add(categoryExecutor.submit(() -> drainCategoriesWithHelper(helperKit.get(), categories, nextCategory, results)));
+        }
 
-        return kit.webDriver.findElements(menuLinkSelector).stream()
-                .map(link -> new PageCategory(link.getText().trim(), link.getAttribute("href")))
-                .collect(Collectors.toList());
-    }
+        drainCategories(kit, categories, nextCategory, results);
+        awaitHelpers(helpers);
 
-    private List<Dish> scrapeDishesFromCategoryPage(WebDriverKit kit, PageCategory category) {
-        kit.webDriver.get(category.url());
-        kit.webDriverWait.until(ExpectedConditions.presenceOfElementLocated(By.cssSelector("div.menu-list-item")));
+        List<Dish> dishes = new ArrayList<>();
+        for (int i = 0; i < categories.size(); i++) {
+            List<Dish> categoryDishes = results.get(i);
+            if (categoryDishes == null) {
+                categoryDishes = scrapeDishesFromCategoryPage(kit, categories.get(i));
+            }
+            dishes.addAll(categoryDishes);
+        }
+        return dishes;
+    }
 
-        Document page = Jsoup.parse(kit.webDriver.getPageSource());
-        Elements subCategoryTitles = page.select("h2.dish-list--title");
+    private void drainCategories(WebDriverKit kit, List<PageCategory> categories,
+                                 AtomicInteger nextCategory, AtomicReferenceArray<List<Dish>> results) {
+        int index;
+        while ((index = nextCategory.getAndIncrement()) < categories.size()) {
+            results.set(index, scrapeDishesFromCategoryPage(kit, categories.get(index)));
+        }
+    }
 
-        if (subCategoryTitles.isEmpty()) {
-            return extractDishesFromElements(page.select("div.menu-list-item"), category.name(), null);
+    private void drainCategoriesWithHelper(WebDriverKit helperKit, List<PageCategory> categories,
+                                           AtomicInteger nextCategory, AtomicReferenceArray<List<Dish>> results) {
+        try {
+            drainCategories(helperKit, categories, nextCategory, results);
+            webDriverPool.release(helperKit);
+        } catch (CircuitOpenException e) {
+            webDriverPool.release(helperKit);
+            log.warn("A helper session stopped parsing categories: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            webDriverPool.invalidate(helperKit);
+            log.warn("A helper session failed while parsing categories: {}", e.getMessage());
         }
+    }
 
-        List<Dish> dishes = new ArrayList<>();
-        for (Element titleElement : subCategoryTitles) {
-            String subCategoryName = titleElement.text().trim();
-            Elements dishElements = new Elements();
-            Element nextSibling = titleElement.nextElementSibling();
-
-            // Collect all sibling elements until the next subcategory title
-            while (nextSibling != null && !nextSibling.is("h2.dish-list--title")) {
-                dishElements.addAll(nextSibling.select("div.menu-list-item"));
-                nextSibling = nextSibling.nextElementSibling();
+    private void awaitHelpers(List<Future<?>> helpers) throws InvalidParseException {
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InvalidParseException("Interrupted while waiting for category pages");
+            } catch (ExecutionException e) {
+                log.warn("A category helper task failed: {}", e.getCause().getMessage());
             }
-            dishes.addAll(extractDishesFromElements(dishElements, category.name(), subCategoryName));
         }
-        return dishes;
     }
 
-    private List<Dish> extractDishesFromElements(Elements dishElements, String mainCategory, String subCategory) {
-        List<Dish> dishes = new ArrayList<>();
-        for (Element dishElement : dishElements) {
-            String name = Optional.ofNullable(dishElement.selectFirst("h4.item-title")).map(Element::text).orElse("").trim();
-            String description = Optional.ofNullable(dishElement.selectFirst("div.item-description p")).map(Element::text).orElse("").trim();
-            String priceStr = Optional.ofNullable(dishElement.selectFirst("div.price")).map(Element::text).orElse("0").trim();
-
-            DishCategory dishCategory = DishCategory.builder()
-                    .category(mainCategory)
-                    .subCategory(subCategory)
-                    .build();
-
-            dishes.add(Dish.builder()
-                    .name(name)
-                    .dishCategory(dishCategory)
-                    .description(description)
-                    .price(parsePrice(priceStr))
-                    .build());
+    // Goes through the host's breaker like every HTTP fetch does, and every failed load counts against the host
+    private void loadPage(WebDriverKit kit, String url) {
+        String host = URI.create(url).getHost();
+        try {
+            resilienceRegistry.siteRateLimiter(host).acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebDriverException("Interrupted while waiting to load " + url);
         }
-        return dishes;
-    }
 
-    private BigDecimal parsePrice(String priceString) {
-        if (priceString == null || priceString.isEmpty()) return BigDecimal.ZERO;
+        CircuitBreaker circuitBreaker = resilienceRegistry.circuitBreaker(host);
+        if (!circuitBreaker.tryAcquire()) {
+            throw new CircuitOpenException("Circuit breaker for " + host + " is open, skipping " + url);
+        }
         try {
-            String sanitizedPrice = priceString.replaceAll("[^\\d.]", "");
-            return new BigDecimal(sanitizedPrice);
-        } catch (NumberFormatException e) {
-            return BigDecimal.ZERO;
+            kit.load(url);
+            circuitBreaker.onSuccess();
+        } catch (RuntimeException e) {
+            circuitBreaker.onFailure();
+            throw e;
         }
+        agentMetrics.pageFetched("browser");
+    }
+
+    private String scrapeRestaurantName(WebDriverKit kit) {
+        By titleSelector = By.cssSelector(MenuPageExtractor.RESTAURANT_TITLE_SELECTOR);
+        kit.getWebDriverWait().until(ExpectedConditions.visibilityOfElementLocated(titleSelector));
+        return kit.getWebDriver().findElement(titleSelector).getText().trim();
+    }
+
+    private List<PageCategory> scrapeMenuCategories(WebDriverKit kit) {
+        By menuLinkSelector = By.cssSelector(MenuPageExtractor.MENU_LINK_SELECTOR);
+        kit.getWebDriverWait().until(ExpectedConditions.visibilityOfElementLocated(menuLinkSelector));
+
+        // The href property is resolved against the page URL, like the absolute links the HTTP parser builds
+        return kit.getWebDriver().findElements(menuLinkSelector).stream()
+                .map(link -> new PageCategory(link.getText().trim(), link.getDomProperty("href")))
+                .collect(Collectors.toList());
+    }
+
+    private List<Dish> scrapeDishesFromCategoryPage(WebDriverKit kit, PageCategory category) {
+        loadPage(kit, category.url());
+        kit.getWebDriverWait().until(ExpectedConditions.presenceOfElementLocated(By.cssSelector(MenuPageExtractor.DISH_SELECTOR)));
+
+        Document page = Jsoup.parse(kit.getWebDriver().getPageSource());
+        return menuPageExtractor.extractDishes(page, category.name());
     }
-}
\ No newline at end of file
+}
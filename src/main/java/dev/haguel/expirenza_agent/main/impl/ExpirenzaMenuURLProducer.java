@@ -15,6 +15,13 @@ public class ExpirenzaMenuURLProducer extends ItemProducer<LinkedBlockingQueue<S
 
     @Override
     public String produce() {
-        return dataSource.poll();
+        if (getStartedPasses() == 0) {
+            passStarted();
+        }
+        String url = dataSource.poll();
+        if (url == null && getCompletedPasses() == 0) {
+            passCompleted();
+        }
+        return url;
     }
 }
@@ -0,0 +1,100 @@
+package dev.haguel.expirenza_agent.main.impl;
+
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import dev.haguel.expirenza_agent.main.BatchDataExporter;
+import dev.haguel.expirenza_agent.metrics.AgentMetrics;
+import dev.haguel.expirenza_agent.utils.ExecutionMode;
+import dev.haguel.expirenza_agent.utils.ExecutorUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// Hands every batch to all configured sinks at once. Only the primary sink decides whether the batch was exported:
+// its failure fails the batch and the crawl scheduler retries those restaurants. The secondary sinks are counted and
+// logged when they fail, without holding back the others or failing a batch the primary sink has written.
+@Slf4j
+public class FanOutMenuExporter implements BatchDataExporter<Restaurant>, Closeable {
+    private final String primaryName;
+    private final BatchDataExporter<Restaurant> primary;
+    private final Map<String, BatchDataExporter<Restaurant>> secondaries;
+    private final AgentMetrics agentMetrics;
+    private final ExecutorService executor;
+
+    public FanOutMenuExporter(String primaryName, BatchDataExporter<Restaurant> primary,
+                              Map<String, BatchDataExporter<Restaurant>> secondaries, AgentMetrics agentMetrics,
+                              ExecutionMode executionMode) {
+        this.primaryName = primaryName;
+        this.primary = primary;
+        this.secondaries = new LinkedHashMap<>(secondaries);
+        this.agentMetrics = agentMetrics;
+        this.executor = secondaries.isEmpty() ? null : ExecutorUtil.newElasticExecutor(executionMode);
+    }
+
+    @Override
+    public void exportAll(List<Restaurant> restaurants) {
+        if (restaurants.isEmpty()) {
+            return;
+        }
+        List<Future<RuntimeException>> pending = new ArrayList<>(secondaries.size());
+        secondaries.forEach((name, sink) -> pending.add(executor.submit(() -> exportTo(name, sink, restaurants))));
+
+        RuntimeException failure = exportTo(primaryName, primary, restaurants);
+
+        // Waiting keeps a slow secondary sink from falling ever further behind the primary one
+        try {
+            for (Future<RuntimeException> future : pending) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // exportTo returns its own failures, so only an unexpected error ends up here
+            log.error("An error occurred while waiting for the export sinks: {}", e.getCause().getMessage());
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Returns the failure of the sink rather than throwing it, so every sink gets the batch
+    private RuntimeException exportTo(String name, BatchDataExporter<Restaurant> sink, List<Restaurant> restaurants) {
+        long start = System.nanoTime();
+        try {
+            sink.exportAll(restaurants);
+            agentMetrics.recordStage("sink." + name, start);
+            return null;
+        } catch (RuntimeException e) {
+            agentMetrics.error("sink." + name);
+            log.error("An error occurred while exporting {} restaurants to {}: {}", restaurants.size(), name, e.getMessage());
+            return e;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            ExecutorUtil.shutdown(executor, 30);
+        }
+        Map<String, BatchDataExporter<Restaurant>> sinks = new LinkedHashMap<>();
+        sinks.put(primaryName, primary);
+        sinks.putAll(secondaries);
+        sinks.forEach((name, sink) -> {
+            if (sink instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close export sink {}: {}", name, e.getMessage());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,107 @@
+package dev.haguel.expirenza_agent.main.impl;
+
+import dev.haguel.expirenza_agent.main.ItemProducer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Streams one URL per line and remembers its byte offset, so a growing file is only ever read once. A read from the
+// start of the file is a pass; lines appended later belong to that pass until the file is replaced.
+@Slf4j
+public class FileMenuURLProducer extends ItemProducer<Path, String> {
+    private InputStream input;
+    private long offset;
+    private boolean readingWholeFile;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+    public FileMenuURLProducer(Path file) {
+        super(file);
+    }
+
+    @Override
+    public String produce() {
+        try {
+            if (input == null && !open()) {
+                return null;
+            }
+
+            String url;
+            while ((url = readCompleteLine()) != null) {
+                url = url.trim();
+                if (!url.isEmpty() && !url.startsWith("#")) {
+                    return url;
+                }
+            }
+
+            close();
+            if (readingWholeFile) {
+                readingWholeFile = false;
+                passCompleted();
+            }
+            return null;
+        } catch (IOException e) {
+            log.warn("Failed to read menu URLs from {}: {}", dataSource, e.getMessage());
+            readingWholeFile = false;
+            close();
+            return null;
+        }
+    }
+
+    // A trailing line without a newline may still be written to, so it is left for the next read
+    private String readCompleteLine() throws IOException {
+        line.reset();
+        int b;
+        while ((b = input.read()) != -1) {
+            if (b == '\n') {
+                offset += line.size() + 1;
+                return line.toString(StandardCharsets.UTF_8);
+            }
+            line.write(b);
+        }
+        return null;
+    }
+
+    private boolean open() throws IOException {
+        if (!Files.isRegularFile(dataSource)) {
+            return false;
+        }
+
+        long size = Files.size(dataSource);
+        if (size < offset) {
+            // The file was replaced or truncated; already seen URLs are filtered further down the line
+            offset = 0;
+        }
+        if (size == offset) {
+            return false;
+        }
+
+        FileChannel channel = FileChannel.open(dataSource, StandardOpenOption.READ);
+        channel.position(offset);
+        if (offset == 0) {
+            readingWholeFile = true;
+            passStarted();
+        }
+        input = new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024);
+        return true;
+    }
+
+    private void close() {
+        try {
+            if (input != null) {
+                input.close();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to close {}: {}", dataSource, e.getMessage());
+        }
+        input = null;
+    }
+}
@@ -0,0 +1,204 @@
+package dev.haguel.expirenza_agent.main.impl;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.DishCategory;
+import dev.haguel.expirenza_agent.entity.PageCategory;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.QueryParser;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+public class MenuPageExtractor {
+    static final String RESTAURANT_TITLE_SELECTOR = "h2.title";
+    static final String MENU_LINK_SELECTOR = "a.main-menu-item";
+    static final String DISH_SELECTOR = "div.menu-list-item";
+    static final String SUB_CATEGORY_TITLE_SELECTOR = "h2.dish-list--title";
+    static final String DISH_NAME_SELECTOR = "h4.item-title";
+    static final String DISH_DESCRIPTION_SELECTOR = "div.item-description p";
+    static final String DISH_PRICE_SELECTOR = "div.price";
+
+    // Parsed once instead of on every select call
+    private static final Evaluator RESTAURANT_TITLE = QueryParser.parse(RESTAURANT_TITLE_SELECTOR);
+    private static final Evaluator MENU_LINK = QueryParser.parse(MENU_LINK_SELECTOR);
+    private static final Evaluator DISH = QueryParser.parse(DISH_SELECTOR);
+    private static final Evaluator SUB_CATEGORY_TITLE = QueryParser.parse(SUB_CATEGORY_TITLE_SELECTOR);
+    private static final Evaluator DISH_NAME = QueryParser.parse(DISH_NAME_SELECTOR);
+    private static final Evaluator DISH_DESCRIPTION = QueryParser.parse(DISH_DESCRIPTION_SELECTOR);
+    private static final Evaluator DISH_PRICE = QueryParser.parse(DISH_PRICE_SELECTOR);
+
+    private static final int MAX_LONG_DIGITS = 18;
+
+    public boolean hasRestaurantMarkup(Document page) {
+        return page.selectFirst(RESTAURANT_TITLE) != null && page.selectFirst(MENU_LINK) != null;
+    }
+
+    public boolean hasDishMarkup(Document page) {
+        return page.selectFirst(DISH) != null;
+    }
+
+    public String extractRestaurantName(Document page) {
+        Element title = page.selectFirst(RESTAURANT_TITLE);
+        return title != null ? title.text() : "";
+    }
+
+    public List<PageCategory> extractCategories(Document page) {
+        List<PageCategory> categories = new ArrayList<>();
+        for (Element link : page.select(MENU_LINK)) {
+            categories.add(new PageCategory(link.text().intern(), link.absUrl("href")));
+        }
+        return categories;
+    }
+
+    public List<Dish> extractDishes(Document page, String categoryName) {
+        SubCategoryGrouping grouping = new SubCategoryGrouping(page, categoryName != null ? categoryName.intern() : null);
+        NodeTraversor.filter(grouping, page);
+        return grouping.titleSeen ? grouping.dishes : grouping.untitledDishes;
+    }
+
+    // One document-order walk instead of a sibling walk and a select per subcategory title: each dish belongs to the
+    // title seen last. Dishes before the first title are only kept when the page has no titles at all.
+    private class SubCategoryGrouping implements NodeFilter {
+        private final Document page;
+        private final String category;
+        private final DishCategory untitledCategory;
+        private final List<Dish> dishes = new ArrayList<>();
+        private final List<Dish> untitledDishes = new ArrayList<>();
+        private DishCategory currentCategory;
+        private boolean titleSeen;
+
+        private SubCategoryGrouping(Document page, String category) {
+            this.page = page;
+            this.category = category;
+            this.untitledCategory = DishCategory.builder().category(category).build();
+        }
+
+        @Override
+        public FilterResult head(Node node, int depth) {
+            if (!(node instanceof Element element)) {
+                return FilterResult.SKIP_ENTIRELY;
+            }
+            if (SUB_CATEGORY_TITLE.matches(page, element)) {
+                titleSeen = true;
+                currentCategory = DishCategory.builder().category(category).subCategory(element.text().intern()).build();
+                return FilterResult.SKIP_ENTIRELY;
+            }
+            if (DISH.matches(page, element)) {
+                if (currentCategory != null) {
+                    dishes.add(extractDish(element, currentCategory));
+                } else if (!titleSeen) {
+                    untitledDishes.add(extractDish(element, untitledCategory));
+                }
+                return FilterResult.SKIP_ENTIRELY;
+            }
+            return FilterResult.CONTINUE;
+        }
+    }
+
+    public List<Dish> extractDishesFromElements(Elements dishElements, String mainCategory, String subCategory) {
+        // Every dish of a group shares one immutable category, and the names repeat across restaurants
+        DishCategory dishCategory = DishCategory.builder()
+                .category(mainCategory != null ? mainCategory.intern() : null)
+                .subCategory(subCategory != null ? subCategory.intern() : null)
+                .build();
+
+        List<Dish> dishes = new ArrayList<>(dishElements.size());
+        for (Element dishElement : dishElements) {
+            dishes.add(extractDish(dishElement, dishCategory));
+        }
+        return dishes;
+    }
+
+    // One walk over the dish subtree finds all three fields instead of a separate select per field
+    private Dish extractDish(Element dishElement, DishCategory dishCategory) {
+        Element[] fields = new Element[3];
+        NodeTraversor.filter(new NodeFilter() {
+            private int found;
+
+            @Override
+            public FilterResult head(Node node, int depth) {
+                if (!(node instanceof Element element)) {
+                    return FilterResult.SKIP_ENTIRELY;
+                }
+                found += match(0, DISH_NAME, element) + match(1, DISH_DESCRIPTION, element) + match(2, DISH_PRICE, element);
+                return found == fields.length ? FilterResult.STOP : FilterResult.CONTINUE;
+            }
+
+            private int match(int field, Evaluator evaluator, Element element) {
+                if (fields[field] != null || !evaluator.matches(dishElement, element)) {
+                    return 0;
+                }
+                fields[field] = element;
+                return 1;
+            }
+        }, dishElement);
+
+        return Dish.builder()
+                .name(fields[0] != null ? fields[0].text() : "")
+                .dishCategory(dishCategory)
+                .description(fields[1] != null ? fields[1].text() : "")
+                .price(fields[2] != null ? parsePrice(fields[2].text()) : BigDecimal.ZERO)
+                .build();
+    }
+
+    // Takes the first number in the text: '.' or ',' followed by one or two digits is the decimal point, and '.', ',',
+    // a space or an apostrophe followed by exactly three digits groups thousands ("1 234,50 ₴", "1,234.50", "від 99 грн")
+    public BigDecimal parsePrice(String priceString) {
+        if (priceString == null) return BigDecimal.ZERO;
+
+        int length = priceString.length();
+        int start = 0;
+        while (start < length && !isDigit(priceString.charAt(start))) {
+            start++;
+        }
+
+        long unscaled = 0;
+        int digits = 0;
+        int scale = -1;
+        for (int i = start; i < length; i++) {
+            char c = priceString.charAt(i);
+            if (isDigit(c)) {
+                if (digits == MAX_LONG_DIGITS) {
+                    return BigDecimal.ZERO;
+                }
+                unscaled = unscaled * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (scale < 0 && (c == '.' || c == ',') && isDigitRun(priceString, i + 1, 1, 2)) {
+                scale = 0;
+            } else if (scale < 0 && isGroupSeparator(c) && isDigitRun(priceString, i + 1, 3, 3)) {
+                continue;
+            } else {
+                break;
+            }
+        }
+        return digits == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(unscaled, Math.max(scale, 0));
+    }
+
+    private static boolean isDigitRun(String value, int from, int minDigits, int maxDigits) {
+        int digits = 0;
+        while (from + digits < value.length() && isDigit(value.charAt(from + digits))) {
+            digits++;
+        }
+        return digits >= minDigits && digits <= maxDigits;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isGroupSeparator(char c) {
+        return c == '.' || c == ',' || c == ' ' || c == '\u00a0' || c == '\u202f' || c == '\'';
+    }
+}
@@ -0,0 +1,160 @@
+package dev.haguel.expirenza_agent.main.impl;
+
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import dev.haguel.expirenza_agent.main.BatchDataExporter;
+import dev.haguel.expirenza_agent.main.ExportListener;
+import dev.haguel.expirenza_agent.metrics.AgentMetrics;
+import dev.haguel.expirenza_agent.resilience.ResilienceRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Retry queue of a secondary sink, which owns every retry of it. Restaurants of a failed batch are kept and written
+// again together with the next batch, only the latest result per restaurant is kept, and nothing is sent until a
+// jittered backoff has passed. Batches arriving meanwhile join the queue, and a timer retries it when no new batch
+// comes along. Restaurants whose shard went to another node since they were queued are dropped before each attempt, so
+// a stale menu never overwrites a newer one. exportAll only queues and never throws; whether a restaurant was written,
+// dropped or discarded is told to the listener.
+@Slf4j
+public class RetryingMenuExporter implements BatchDataExporter<Restaurant>, Closeable {
+    private final String name;
+    private final BatchDataExporter<Restaurant> delegate;
+    private final ResilienceRegistry resilienceRegistry;
+    private final AgentMetrics agentMetrics;
+    private final int maxPending;
+    private final Predicate<String> heldUrl;
+    private final ExportListener<Restaurant> listener;
+
+    // Keyed by URL, since restaurants of different sites may share a name
+    private final Map<String, Restaurant> pending = new LinkedHashMap<>();
+    private final ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor();
+    private ScheduledFuture<?> scheduledRetry;
+    private int failedAttempts;
+    private long nextAttemptMillis;
+
+    public RetryingMenuExporter(String name, BatchDataExporter<Restaurant> delegate, ResilienceRegistry resilienceRegistry,
+                                AgentMetrics agentMetrics, int maxPending, Predicate<String> heldUrl,
+                                ExportListener<Restaurant> listener) {
+        this.name = name;
+        this.delegate = delegate;
+        this.resilienceRegistry = resilienceRegistry;
+        this.agentMetrics = agentMetrics;
+        this.maxPending = maxPending;
+        this.heldUrl = heldUrl;
+        this.listener = listener;
+    }
+
+    @Override
+    public synchronized void exportAll(List<Restaurant> restaurants) {
+        for (Restaurant restaurant : restaurants) {
+            // Re-inserting moves a restaurant to the end, so it is the newest result that gets written
+            pending.remove(restaurant.getUrl());
+            pending.put(restaurant.getUrl(), restaurant);
+        }
+        dropOldest();
+
+        if (System.currentTimeMillis() >= nextAttemptMillis) {
+            writePending();
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    // Returns the failure, so closing can tell the listener why the queue was given up on
+    private RuntimeException writePending() {
+        dropLostShards();
+        if (pending.isEmpty()) {
+            return null;
+        }
+
+        List<Restaurant> batch = new ArrayList<>(pending.values());
+        try {
+            delegate.exportAll(batch);
+        } catch (RuntimeException e) {
+            failedAttempts++;
+            // Continues the backoff where the per-request retries of the sink stopped
+            long delayMillis = resilienceRegistry.backoffMillis(resilienceRegistry.getMaxAttempts() + failedAttempts);
+            nextAttemptMillis = System.currentTimeMillis() + delayMillis;
+            if (!retryExecutor.isShutdown() && (scheduledRetry == null || scheduledRetry.isDone())) {
+                scheduledRetry = retryExecutor.schedule(this::retry, delayMillis, TimeUnit.MILLISECONDS);
+            }
+            agentMetrics.retry("sink." + name);
+            log.warn("Writing {} restaurants to {} failed, retrying in {} ms: {}", batch.size(), name, delayMillis, e.getMessage());
+            return e;
+        }
+
+        pending.clear();
+        failedAttempts = 0;
+        nextAttemptMillis = 0;
+        batch.forEach(restaurant -> notify(restaurant, listener::exported));
+        return null;
+    }
+
+    private synchronized void retry() {
+        // This task is still running, so a failure below would otherwise see it as pending and schedule no new one
+        scheduledRetry = null;
+        writePending();
+    }
+
+    private void dropOldest() {
+        Iterator<Restaurant> oldest = pending.values().iterator();
+        while (pending.size() > maxPending && oldest.hasNext()) {
+            Restaurant dropped = oldest.next();
+            oldest.remove();
+            log.warn("Retry queue of {} is full, dropping {}", name, dropped.getName());
+            notify(dropped, restaurant -> listener.failed(restaurant, new IllegalStateException("Retry queue of " + name + " is full")));
+        }
+    }
+
+    private void dropLostShards() {
+        Iterator<Restaurant> queued = pending.values().iterator();
+        while (queued.hasNext()) {
+            Restaurant restaurant = queued.next();
+            if (!heldUrl.test(restaurant.getUrl())) {
+                queued.remove();
+                log.warn("Dropping {} from the retry queue of {}, its shard is no longer held by this node", restaurant.getName(), name);
+                notify(restaurant, listener::discarded);
+            }
+        }
+    }
+
+    // A throwing listener must neither keep the others from being told nor end the retry timer
+    private void notify(Restaurant restaurant, Consumer<Restaurant> outcome) {
+        try {
+            outcome.accept(restaurant);
+        } catch (RuntimeException e) {
+            log.error("An export listener of {} on {} failed: {}", restaurant.getName(), name, e.getMessage());
+        }
+    }
+
+    // One last attempt for whatever is still queued, then the wrapped sink is closed
+    @Override
+    public void close() throws IOException {
+        retryExecutor.shutdownNow();
+        synchronized (this) {
+            RuntimeException failure = writePending();
+            if (failure != null) {
+                log.error("Discarding {} restaurants that could not be written to {}: {}", pending.size(), name, failure.getMessage());
+                pending.values().forEach(restaurant -> notify(restaurant, discarded -> listener.failed(discarded, failure)));
+                pending.clear();
+            }
+        }
+        if (delegate instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+}
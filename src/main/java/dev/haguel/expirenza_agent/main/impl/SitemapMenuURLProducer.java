@@ -0,0 +1,141 @@
+package dev.haguel.expirenza_agent.main.impl;
+
+import dev.haguel.expirenza_agent.main.ItemProducer;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Pattern;
+
+// Walks a sitemap (or sitemap index) with a streaming parser, so only the current document's cursor is held in memory.
+// Every walk is a pass, complete only if no sitemap of it failed to load.
+@Slf4j
+public class SitemapMenuURLProducer extends ItemProducer<URI, String> {
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    private final Pattern urlPattern;
+    private final Duration refreshInterval;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final Deque<URI> pendingSitemaps = new ArrayDeque<>();
+    private InputStream currentStream;
+    private XMLStreamReader currentReader;
+    private boolean currentIsIndex;
+    private long nextWalkAtMillis;
+    private boolean walkFailed;
+
+    public SitemapMenuURLProducer(URI sitemap, Pattern urlPattern, Duration refreshInterval) {
+        super(sitemap);
+        this.urlPattern = urlPattern;
+        this.refreshInterval = refreshInterval;
+    }
+
+    @Override
+    public String produce() {
+        if (currentReader == null && pendingSitemaps.isEmpty()) {
+            if (System.currentTimeMillis() < nextWalkAtMillis) {
+                return null;
+            }
+            pendingSitemaps.add(dataSource);
+            nextWalkAtMillis = System.currentTimeMillis() + refreshInterval.toMillis();
+            walkFailed = false;
+            passStarted();
+        }
+
+        while (currentReader != null || !pendingSitemaps.isEmpty()) {
+            try {
+                if (currentReader == null) {
+                    openSitemap(pendingSitemaps.poll());
+                    continue;
+                }
+
+                String location = nextLocation();
+                if (location == null) {
+                    closeCurrent();
+                } else if (currentIsIndex) {
+                    pendingSitemaps.add(URI.create(location));
+                } else if (urlPattern.matcher(location).matches()) {
+                    return location;
+                }
+            } catch (IOException | XMLStreamException | IllegalArgumentException e) {
+                log.warn("Failed to read sitemap: {}", e.getMessage());
+                walkFailed = true;
+                closeCurrent();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                walkFailed = true;
+                closeCurrent();
+                return null;
+            }
+        }
+        if (!walkFailed) {
+            passCompleted();
+        }
+        return null;
+    }
+
+    private void openSitemap(URI sitemap) throws IOException, InterruptedException, XMLStreamException {
+        HttpRequest request = HttpRequest.newBuilder(sitemap).timeout(Duration.ofSeconds(30)).GET().build();
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() / 100 != 2) {
+            response.body().close();
+            throw new IOException("Sitemap " + sitemap + " returned HTTP " + response.statusCode());
+        }
+
+        currentStream = response.body();
+        currentReader = XML_INPUT_FACTORY.createXMLStreamReader(currentStream);
+        currentIsIndex = false;
+    }
+
+    private String nextLocation() throws XMLStreamException {
+        while (currentReader.hasNext()) {
+            if (currentReader.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+
+            String element = currentReader.getLocalName();
+            if ("sitemapindex".equals(element)) {
+                currentIsIndex = true;
+            } else if ("loc".equals(element)) {
+                return currentReader.getElementText().trim();
+            }
+        }
+        return null;
+    }
+
+    private void closeCurrent() {
+        try {
+            if (currentReader != null) {
+                currentReader.close();
+            }
+            if (currentStream != null) {
+                currentStream.close();
+            }
+        } catch (IOException | XMLStreamException e) {
+            log.warn("Failed to close sitemap stream: {}", e.getMessage());
+        }
+        currentReader = null;
+        currentStream = null;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
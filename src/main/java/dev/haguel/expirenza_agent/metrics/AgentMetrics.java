@@ -0,0 +1,96 @@
+package dev.haguel.expirenza_agent.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+@Component
+@RequiredArgsConstructor
+public class AgentMetrics {
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> sheetsTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> pageCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> errorCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> retryCounters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> pageLoadTimers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> pageBytesSummaries = new ConcurrentHashMap<>();
+
+    public void recordStage(String stage, long startNanos) {
+        stageTimers.computeIfAbsent(stage, key -> Timer.builder("expirenza.stage.duration")
+                        .description("Time spent per item in a pipeline stage")
+                        .tag("stage", key)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSheetsCall(String operation, long startNanos) {
+        sheetsTimers.computeIfAbsent(operation, key -> Timer.builder("expirenza.sheets.calls")
+                        .description("Google Sheets API calls")
+                        .tag("operation", key)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void pageFetched(String via) {
+        pageCounters.computeIfAbsent(via, key -> Counter.builder("expirenza.pages.fetched")
+                        .description("Menu pages loaded")
+                        .tag("via", key)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    // A negative byte count means the page did not report it, and only the load time is recorded
+    public void recordPageLoad(String profile, long bytes, long startNanos) {
+        pageLoadTimers.computeIfAbsent(profile, key -> Timer.builder("expirenza.page.load")
+                        .description("Browser page loads until the page is handed to the parser")
+                        .tag("profile", key)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        if (bytes < 0) {
+            return;
+        }
+        pageBytesSummaries.computeIfAbsent(profile, key -> DistributionSummary.builder("expirenza.page.bytes")
+                        .description("Bytes transferred per browser page load")
+                        .baseUnit("bytes")
+                        .tag("profile", key)
+                        .register(meterRegistry))
+                .record(bytes);
+    }
+
+    public void error(String stage) {
+        errorCounters.computeIfAbsent(stage, key -> Counter.builder("expirenza.errors")
+                        .description("Failed items per stage")
+                        .tag("stage", key)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    public void retry(String backend) {
+        retryCounters.computeIfAbsent(backend, key -> Counter.builder("expirenza.retries")
+                        .description("Calls retried after a transient failure")
+                        .tag("backend", key)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    public void gauge(String name, String description, Supplier<Number> value, String... tags) {
+        Gauge.builder(name, value)
+                .description(description)
+                .tags(tags)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,66 @@
+package dev.haguel.expirenza_agent.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+// Token bucket whose refill rate adapts to the backend: a throttling response halves it and every success adds back a
+// twentieth of the maximum, so the limiter settles just below the real quota instead of having to be configured to it
+public class AdaptiveRateLimiter {
+    private static final double INCREASE_FRACTION = 0.05;
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final long DECREASE_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final double maxRate;
+    private final double minRate;
+    private final double burst;
+
+    private double rate;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+    private long lastDecreaseNanos = System.nanoTime() - DECREASE_COOLDOWN_NANOS;
+
+    public AdaptiveRateLimiter(double maxPerSecond, double burst) {
+        this.maxRate = maxPerSecond;
+        this.minRate = maxPerSecond * INCREASE_FRACTION;
+        this.burst = Math.max(1, burst);
+        this.rate = maxPerSecond;
+        this.tokens = this.burst;
+    }
+
+    public void acquire() throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(reserve());
+    }
+
+    // Takes a token now and returns how long the caller has to wait before using it. Tokens may go into debt,
+    // which queues callers behind each other without holding the lock while they wait.
+    public synchronized long reserve() {
+        refill();
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public synchronized void onSuccess() {
+        rate = Math.min(maxRate, rate + maxRate * INCREASE_FRACTION);
+    }
+
+    // Concurrent callers tend to be throttled together, so one burst of 429s only counts as a single decrease
+    public synchronized void onThrottle() {
+        long now = System.nanoTime();
+        if (now - lastDecreaseNanos < DECREASE_COOLDOWN_NANOS) {
+            return;
+        }
+        refill();
+        rate = Math.max(minRate, rate * DECREASE_FACTOR);
+        tokens = Math.min(tokens, 0);
+        lastDecreaseNanos = now;
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) * rate / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,70 @@
+package dev.haguel.expirenza_agent.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+// Opens after a run of consecutive failures and rejects calls until the open period is over. Then a single probe is let
+// through: its success closes the breaker, its failure opens it for another period. Every call that was let through
+// must report onSuccess, onFailure or cancel, otherwise a half-open breaker keeps waiting for its probe.
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    public synchronized boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAtNanos < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (probeInFlight) {
+            return false;
+        }
+        probeInFlight = true;
+        return true;
+    }
+
+    // Unlike tryAcquire, never takes the probe, so callers can fail fast before starting expensive work
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && System.nanoTime() - openedAtNanos < openNanos;
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    // For calls that were let through but never reached the backend, e.g. because the caller was interrupted
+    public synchronized void cancel() {
+        probeInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        probeInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,98 @@
+package dev.haguel.expirenza_agent.resilience;
+
+import dev.haguel.expirenza_agent.metrics.AgentMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Rate limiters per backend, circuit breakers per host and the retry policy shared by the Sheets client and the parsers
+@Component
+@RequiredArgsConstructor
+public class ResilienceRegistry {
+    private final AgentMetrics agentMetrics;
+
+    @Value("${resilience.sheets.requestsPerSecond:1}")
+    private double sheetsRequestsPerSecond;
+
+    @Value("${resilience.sheets.burst:5}")
+    private int sheetsBurst;
+
+    @Value("${resilience.site.requestsPerSecond:10}")
+    private double siteRequestsPerSecond;
+
+    @Value("${resilience.site.burst:20}")
+    private int siteBurst;
+
+    @Value("${resilience.retry.maxAttempts:4}")
+    private int maxAttempts;
+
+    @Value("${resilience.retry.baseDelayMillis:500}")
+    private long baseDelayMillis;
+
+    @Value("${resilience.retry.maxDelayMillis:30000}")
+    private long maxDelayMillis;
+
+    @Value("${resilience.breaker.failureThreshold:5}")
+    private int failureThreshold;
+
+    @Value("${resilience.breaker.openSeconds:30}")
+    private long openSeconds;
+
+    public static final String SHEETS_BACKEND = "sheets";
+
+    private final Map<String, AdaptiveRateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    public AdaptiveRateLimiter sheetsRateLimiter() {
+        return rateLimiters.computeIfAbsent(SHEETS_BACKEND, key -> newRateLimiter(key, sheetsRequestsPerSecond, sheetsBurst));
+    }
+
+    // Menu sites are limited per host, so one slow site cannot use up the budget of the others
+    public AdaptiveRateLimiter siteRateLimiter(String host) {
+        return rateLimiters.computeIfAbsent("site:" + host, key -> newRateLimiter(key, siteRequestsPerSecond, siteBurst));
+    }
+
+    public CircuitBreaker circuitBreaker(String host) {
+        return circuitBreakers.computeIfAbsent(host, key -> {
+            CircuitBreaker circuitBreaker = new CircuitBreaker(failureThreshold, TimeUnit.SECONDS.toMillis(openSeconds));
+            agentMetrics.gauge("expirenza.breaker.state", "Circuit breaker state: 0 closed, 1 half-open, 2 open",
+                    () -> switch (circuitBreaker.getState()) {
+                        case CLOSED -> 0;
+                        case HALF_OPEN -> 1;
+                        case OPEN -> 2;
+                    }, "host", key);
+            return circuitBreaker;
+        });
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    // Full jitter: a uniformly random delay below the exponential ceiling, so callers that failed together retry apart
+    public long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    // Rate limiting and server errors are worth another attempt; other client errors will fail the same way again
+    public static boolean isRetryableStatus(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    private AdaptiveRateLimiter newRateLimiter(String key, double requestsPerSecond, int burst) {
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(requestsPerSecond, burst);
+        agentMetrics.gauge("expirenza.ratelimit.rate", "Current requests per second allowed by an adaptive rate limiter",
+                rateLimiter::getRate, "backend", key);
+        return rateLimiter;
+    }
+}
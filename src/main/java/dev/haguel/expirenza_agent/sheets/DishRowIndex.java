@@ -0,0 +1,165 @@
+package dev.haguel.expirenza_agent.sheets;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.DishCategory;
+import dev.haguel.expirenza_agent.entity.DishKey;
+
+import java.util.Arrays;
+
+// Maps (category, subCategory, name) to the 1-based row of a dish on a sheet. Open addressing with linear probing over
+// parallel arrays, so neither a lookup nor an insert allocates, and clear() keeps the arrays for the next export of the
+// same sheet. Missing parts of a key are treated as empty strings, like in DishKey.
+public class DishRowIndex {
+    public static final int NO_ROW = 0;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private String[] categories;
+    private String[] subCategories;
+    private String[] names;
+    private int[] hashes;
+    // NO_ROW marks a free slot, which works because sheet rows start at 1
+    private int[] rows;
+    private int size;
+
+    public DishRowIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    public DishRowIndex(int expectedSize) {
+        allocate(tableSize(expectedSize));
+    }
+
+    public int get(Dish dish) {
+        DishCategory category = dish.getDishCategory();
+        return get(category != null ? category.getCategory() : null, category != null ? category.getSubCategory() : null, dish.getName());
+    }
+
+    public int get(DishKey key) {
+        return get(key.category(), key.subCategory(), key.name());
+    }
+
+    // Returns NO_ROW when the dish is not on the sheet
+    public int get(String category, String subCategory, String name) {
+        category = nullToEmpty(category);
+        subCategory = nullToEmpty(subCategory);
+        name = nullToEmpty(name);
+
+        int hash = hash(category, subCategory, name);
+        int mask = rows.length - 1;
+        for (int slot = hash & mask; rows[slot] != NO_ROW; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && matches(slot, category, subCategory, name)) {
+                return rows[slot];
+            }
+        }
+        return NO_ROW;
+    }
+
+    // Keeps the first row of a key, so a dish that appears twice on a sheet keeps writing to its upper row
+    public boolean putIfAbsent(String category, String subCategory, String name, int row) {
+        if (row <= NO_ROW) {
+            throw new IllegalArgumentException("Sheet rows start at 1, got " + row);
+        }
+        category = nullToEmpty(category);
+        subCategory = nullToEmpty(subCategory);
+        name = nullToEmpty(name);
+
+        if ((size + 1) * 2 > rows.length) {
+            resize(rows.length * 2);
+        }
+
+        int hash = hash(category, subCategory, name);
+        int mask = rows.length - 1;
+        int slot = hash & mask;
+        for (; rows[slot] != NO_ROW; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && matches(slot, category, subCategory, name)) {
+                return false;
+            }
+        }
+        insert(slot, hash, category, subCategory, name, row);
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Empties the index for the next read of the sheet. The table only shrinks when it is far larger than needed.
+    public void clear(int expectedSize) {
+        int wanted = tableSize(expectedSize);
+        if (rows.length > wanted * 4) {
+            allocate(wanted);
+            return;
+        }
+        if (size > 0) {
+            Arrays.fill(categories, null);
+            Arrays.fill(subCategories, null);
+            Arrays.fill(names, null);
+            Arrays.fill(rows, NO_ROW);
+            size = 0;
+        }
+    }
+
+    private boolean matches(int slot, String category, String subCategory, String name) {
+        return names[slot].equals(name) && subCategories[slot].equals(subCategory) && categories[slot].equals(category);
+    }
+
+    private void insert(int slot, int hash, String category, String subCategory, String name, int row) {
+        categories[slot] = category;
+        subCategories[slot] = subCategory;
+        names[slot] = name;
+        hashes[slot] = hash;
+        rows[slot] = row;
+        size++;
+    }
+
+    private void resize(int capacity) {
+        String[] oldCategories = categories;
+        String[] oldSubCategories = subCategories;
+        String[] oldNames = names;
+        int[] oldHashes = hashes;
+        int[] oldRows = rows;
+        allocate(capacity);
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldRows.length; i++) {
+            if (oldRows[i] == NO_ROW) {
+                continue;
+            }
+            int slot = oldHashes[i] & mask;
+            while (rows[slot] != NO_ROW) {
+                slot = (slot + 1) & mask;
+            }
+            insert(slot, oldHashes[i], oldCategories[i], oldSubCategories[i], oldNames[i], oldRows[i]);
+        }
+    }
+
+    private void allocate(int capacity) {
+        categories = new String[capacity];
+        subCategories = new String[capacity];
+        names = new String[capacity];
+        hashes = new int[capacity];
+        rows = new int[capacity];
+        size = 0;
+    }
+
+    // Keeps the load factor at or below one half
+    private static int tableSize(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // String caches its own hash code, so this only mixes three ints; the mix spreads them over the low bits the mask keeps
+    private static int hash(String category, String subCategory, String name) {
+        int hash = (category.hashCode() * 31 + subCategory.hashCode()) * 31 + name.hashCode();
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+}
@@ -0,0 +1,92 @@
+package dev.haguel.expirenza_agent.sheets;
+
+import com.google.api.services.sheets.v4.model.Sheet;
+import com.google.api.services.sheets.v4.model.SheetProperties;
+import com.google.api.services.sheets.v4.model.Spreadsheet;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+@Component
+@RequiredArgsConstructor
+public class SheetMetadataCache {
+    private final SheetsClientProvider sheetsClientProvider;
+
+    @Value("${google.sheets.spreadsheetId}")
+    private String spreadsheetId;
+
+    @Value("${google.sheets.metadataTtlSeconds:600}")
+    private long ttlSeconds;
+
+    public record SheetInfo(int sheetId, int rowCount) {}
+
+    private volatile Map<String, SheetInfo> sheetsByTitle = new ConcurrentHashMap<>();
+    private volatile long loadedAtNanos;
+    private volatile boolean loaded;
+
+    public Optional<SheetInfo> getCached(String title) {
+        return Optional.ofNullable(sheetsByTitle.get(title));
+    }
+
+    public Set<String> findMissing(Collection<String> titles) throws IOException, GeneralSecurityException {
+        if (isExpired()) {
+            refresh();
+        }
+
+        Set<String> missing = collectMissing(titles);
+        if (!missing.isEmpty()) {
+            refresh();
+            missing = collectMissing(titles);
+        }
+        return missing;
+    }
+
+    public void put(String title, SheetInfo sheet) {
+        sheetsByTitle.put(title, sheet);
+    }
+
+    public synchronized void refresh() throws IOException, GeneralSecurityException {
+        Spreadsheet spreadsheet = sheetsClientProvider.execute(sheetsClientProvider.getSheets().spreadsheets().get(spreadsheetId)
+                .setFields("sheets.properties(sheetId,title,gridProperties.rowCount)"));
+
+        Map<String, SheetInfo> refreshed = new ConcurrentHashMap<>();
+        if (spreadsheet.getSheets() != null) {
+            for (Sheet sheet : spreadsheet.getSheets()) {
+                SheetProperties properties = sheet.getProperties();
+                refreshed.put(properties.getTitle(), toSheetInfo(properties));
+            }
+        }
+        sheetsByTitle = refreshed;
+        loadedAtNanos = System.nanoTime();
+        loaded = true;
+    }
+
+    public static SheetInfo toSheetInfo(SheetProperties properties) {
+        Integer rowCount = properties.getGridProperties() != null ? properties.getGridProperties().getRowCount() : null;
+        return new SheetInfo(properties.getSheetId(), rowCount != null ? rowCount : 0);
+    }
+
+    private Set<String> collectMissing(Collection<String> titles) {
+        Set<String> missing = new LinkedHashSet<>();
+        for (String title : titles) {
+            if (!sheetsByTitle.containsKey(title)) {
+                missing.add(title);
+            }
+        }
+        return missing;
+    }
+
+    private boolean isExpired() {
+        return !loaded || System.nanoTime() - loadedAtNanos > TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+}
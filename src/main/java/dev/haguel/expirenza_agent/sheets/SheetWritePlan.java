@@ -0,0 +1,43 @@
+package dev.haguel.expirenza_agent.sheets;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+// The rows one export writes to one sheet, by 1-based row number. Unchanged rows are only looked up when the planner
+// wants to rewrite them to join two blocks of changed rows.
+public class SheetWritePlan {
+    private final String sheetName;
+    private final SortedMap<Integer, List<Object>> rows = new TreeMap<>();
+    private IntFunction<List<Object>> unchangedRows = row -> null;
+
+    public SheetWritePlan(String sheetName) {
+        this.sheetName = sheetName;
+    }
+
+    public void write(int row, List<Object> values) {
+        rows.put(row, values);
+    }
+
+    // Returns the current content of an unchanged row, or null when it is not known
+    public void setUnchangedRows(IntFunction<List<Object>> unchangedRows) {
+        this.unchangedRows = unchangedRows;
+    }
+
+    public String getSheetName() {
+        return sheetName;
+    }
+
+    public boolean isEmpty() {
+        return rows.isEmpty();
+    }
+
+    SortedMap<Integer, List<Object>> getRows() {
+        return rows;
+    }
+
+    List<Object> unchangedRow(int row) {
+        return unchangedRows.apply(row);
+    }
+}
@@ -0,0 +1,141 @@
+package dev.haguel.expirenza_agent.sheets;
+
+import com.google.api.services.sheets.v4.model.ValueRange;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Turns row writes into as few ranges as possible: adjacent rows become one block, gaps of up to MAX_BRIDGED_ROWS
+// unchanged rows are rewritten to join two blocks, and the ranges are packed into requests below maxRequestBytes.
+// A block that alone would exceed the limit is split across requests.
+public class SheetWritePlanner {
+    // Rewriting a couple of unchanged rows costs less than the overhead of one more range
+    private static final int MAX_BRIDGED_ROWS = 2;
+    // Rough JSON size of a range entry and of a cell beyond its text
+    private static final int RANGE_OVERHEAD_BYTES = 64;
+    private static final int CELL_OVERHEAD_BYTES = 4;
+
+    private final long maxRequestBytes;
+
+    public SheetWritePlanner(long maxRequestBytes) {
+        this.maxRequestBytes = maxRequestBytes;
+    }
+
+    private static class Block {
+        private final int firstRow;
+        private final List<List<Object>> values = new ArrayList<>();
+        private long bytes = RANGE_OVERHEAD_BYTES;
+
+        private Block(int firstRow) {
+            this.firstRow = firstRow;
+        }
+
+        private int nextRow() {
+            return firstRow + values.size();
+        }
+
+        private void add(List<Object> row, long rowBytes) {
+            values.add(row);
+            bytes += rowBytes;
+        }
+    }
+
+    // Every inner list is the data of one values().batchUpdate request
+    public List<List<ValueRange>> plan(List<SheetWritePlan> sheets) {
+        List<List<ValueRange>> requests = new ArrayList<>();
+        List<ValueRange> request = new ArrayList<>();
+        long requestBytes = 0;
+
+        for (SheetWritePlan sheet : sheets) {
+            for (Block block : toBlocks(sheet)) {
+                if (!request.isEmpty() && requestBytes + block.bytes > maxRequestBytes) {
+                    requests.add(request);
+                    request = new ArrayList<>();
+                    requestBytes = 0;
+                }
+                request.add(toValueRange(sheet.getSheetName(), block));
+                requestBytes += block.bytes;
+            }
+        }
+
+        if (!request.isEmpty()) {
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    private List<Block> toBlocks(SheetWritePlan sheet) {
+        List<Block> blocks = new ArrayList<>();
+        Block block = null;
+
+        for (Map.Entry<Integer, List<Object>> entry : sheet.getRows().entrySet()) {
+            int row = entry.getKey();
+            long rowBytes = estimateBytes(entry.getValue());
+            if (block != null && !extend(sheet, block, row, rowBytes)) {
+                block = null;
+            }
+            if (block == null) {
+                block = new Block(row);
+                blocks.add(block);
+            }
+            block.add(entry.getValue(), rowBytes);
+        }
+        return blocks;
+    }
+
+    // Fills the gap up to the given row with unchanged rows, if it is short, all of them are known and the block stays
+    // below the request limit with them and the row
+    private boolean extend(SheetWritePlan sheet, Block block, int row, long rowBytes) {
+        int gap = row - block.nextRow();
+        if (gap > MAX_BRIDGED_ROWS) {
+            return false;
+        }
+
+        List<List<Object>> bridge = new ArrayList<>(gap);
+        long bridgeBytes = 0;
+        for (int gapRow = block.nextRow(); gapRow < row; gapRow++) {
+            List<Object> unchanged = sheet.unchangedRow(gapRow);
+            if (unchanged == null) {
+                return false;
+            }
+            bridge.add(unchanged);
+            bridgeBytes += estimateBytes(unchanged);
+        }
+        if (block.bytes + bridgeBytes + rowBytes > maxRequestBytes) {
+            return false;
+        }
+        bridge.forEach(unchanged -> block.add(unchanged, estimateBytes(unchanged)));
+        return true;
+    }
+
+    private static ValueRange toValueRange(String sheetName, Block block) {
+        int columns = 1;
+        for (List<Object> row : block.values) {
+            columns = Math.max(columns, row.size());
+        }
+        int lastRow = block.firstRow + block.values.size() - 1;
+        String range = "A" + block.firstRow + ":" + columnName(columns) + lastRow;
+        return new ValueRange().setRange(a1Range(sheetName, range)).setValues(block.values);
+    }
+
+    private static long estimateBytes(List<Object> row) {
+        long bytes = CELL_OVERHEAD_BYTES;
+        for (Object cell : row) {
+            bytes += CELL_OVERHEAD_BYTES + (cell != null ? cell.toString().length() : 0);
+        }
+        return bytes;
+    }
+
+    private static String columnName(int column) {
+        StringBuilder name = new StringBuilder();
+        for (int remaining = column; remaining > 0; remaining = (remaining - 1) / 26) {
+            name.insert(0, (char) ('A' + (remaining - 1) % 26));
+        }
+        return name.toString();
+    }
+
+    public static String a1Range(String sheetName, String range) {
+        return "'" + sheetName.replace("'", "''") + "'!" + range;
+    }
+}
@@ -0,0 +1,181 @@
+package dev.haguel.expirenza_agent.sheets;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.sheets.v4.Sheets;
+import com.google.api.services.sheets.v4.SheetsRequest;
+import com.google.api.services.sheets.v4.SheetsScopes;
+import dev.haguel.expirenza_agent.metrics.AgentMetrics;
+import dev.haguel.expirenza_agent.resilience.AdaptiveRateLimiter;
+import dev.haguel.expirenza_agent.resilience.CircuitBreaker;
+import dev.haguel.expirenza_agent.resilience.ResilienceRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SheetsClientProvider {
+    private final AgentMetrics agentMetrics;
+    private final ResilienceRegistry resilienceRegistry;
+
+    @Value("${google.sheets.serviceAccountKeyPath:/service-account-key.json}")
+    private String serviceAccountKeyPath;
+
+    // Points the client at a Sheets-compatible endpoint other than Google's, e.g. the offline harness
+    @Value("${google.sheets.rootUrl:}")
+    private String rootUrl;
+
+    @Value("${google.sheets.maxConcurrentRequests:4}")
+    private int maxConcurrentRequests;
+
+    private static final String APP_NAME = "Expirenza Menu Exporter";
+    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
+    private static final List<String> SCOPES = Collections.singletonList(SheetsScopes.SPREADSHEETS);
+
+    // The transport pools connections and the credential caches and refreshes its access token, so one client serves all exports
+    private volatile Sheets sheets;
+    private Semaphore requestPermits;
+
+    @PostConstruct
+    public void init() {
+        requestPermits = new Semaphore(maxConcurrentRequests, true);
+    }
+
+    public Sheets getSheets() throws IOException, GeneralSecurityException {
+        Sheets current = sheets;
+        if (current == null) {
+            synchronized (this) {
+                current = sheets;
+                if (current == null) {
+                    current = createSheetsService();
+                    sheets = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Caps in-flight Sheets calls independently of how many exporter threads exist, paces them with the adaptive rate
+    // limiter and retries 429, 5xx and network errors with jittered backoff. The permit is not held while backing off.
+    public <T> T execute(SheetsRequest<T> request) throws IOException {
+        String operation = request.getClass().getSimpleName();
+        CircuitBreaker circuitBreaker = resilienceRegistry.circuitBreaker(URI.create(request.getAbstractGoogleClient().getRootUrl()).getHost());
+        AdaptiveRateLimiter rateLimiter = resilienceRegistry.sheetsRateLimiter();
+
+        for (int attempt = 1; ; attempt++) {
+            if (!circuitBreaker.tryAcquire()) {
+                agentMetrics.error("sheets");
+                throw new IOException("Sheets circuit breaker is open, not sending " + operation);
+            }
+
+            try {
+                rateLimiter.acquire();
+                requestPermits.acquire();
+            } catch (InterruptedException e) {
+                circuitBreaker.cancel();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a Sheets request permit");
+            }
+
+            long start = System.nanoTime();
+            try {
+                T response = request.execute();
+                circuitBreaker.onSuccess();
+                rateLimiter.onSuccess();
+                return response;
+            } catch (IOException e) {
+                agentMetrics.error("sheets");
+                if (!isRetryable(e, circuitBreaker, rateLimiter) || attempt >= resilienceRegistry.getMaxAttempts()) {
+                    throw e;
+                }
+                log.warn("Sheets {} failed on attempt {}, retrying: {}", operation, attempt, e.getMessage());
+            } finally {
+                requestPermits.release();
+                agentMetrics.recordSheetsCall(operation, start);
+            }
+
+            agentMetrics.retry("sheets");
+            backOff(attempt);
+        }
+    }
+
+    // Only server errors and network failures count against the breaker; 429 means the backend is up but we are too fast
+    private boolean isRetryable(IOException e, CircuitBreaker circuitBreaker, AdaptiveRateLimiter rateLimiter) {
+        if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) {
+            circuitBreaker.cancel();
+            return false;
+        }
+        if (!(e instanceof HttpResponseException response)) {
+            circuitBreaker.onFailure();
+            return true;
+        }
+
+        int statusCode = response.getStatusCode();
+        if (statusCode == 429) {
+            rateLimiter.onThrottle();
+        }
+        if (statusCode >= 500) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+        return ResilienceRegistry.isRetryableStatus(statusCode);
+    }
+
+    private void backOff(int attempt) throws InterruptedIOException {
+        try {
+            Thread.sleep(resilienceRegistry.backoffMillis(attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off from a failed Sheets request");
+        }
+    }
+
+    private Sheets createSheetsService() throws IOException, GeneralSecurityException {
+        final NetHttpTransport httpTransport = GoogleNetHttpTransport.newTrustedTransport();
+        try (InputStream credentialsStream = openServiceAccountKey()) {
+            GoogleCredential credential = GoogleCredential.fromStream(credentialsStream).createScoped(SCOPES);
+            Sheets.Builder builder = new Sheets.Builder(httpTransport, JSON_FACTORY, credential)
+                    .setApplicationName(APP_NAME);
+            if (!rootUrl.isBlank()) {
+                builder.setRootUrl(rootUrl);
+            }
+            return builder.build();
+        }
+    }
+
+    // Classpath resources take precedence; a file on disk lets generated or mounted keys be used without repackaging
+    private InputStream openServiceAccountKey() throws IOException {
+        InputStream resourceStream = SheetsClientProvider.class.getResourceAsStream(serviceAccountKeyPath);
+        if (resourceStream != null) {
+            return resourceStream;
+        }
+
+        Path keyFile = Path.of(serviceAccountKeyPath);
+        if (Files.isRegularFile(keyFile)) {
+            return Files.newInputStream(keyFile);
+        }
+        throw new FileNotFoundException("Service account key not found: " + serviceAccountKeyPath);
+    }
+}
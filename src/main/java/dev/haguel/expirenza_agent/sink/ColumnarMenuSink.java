@@ -0,0 +1,167 @@
+package dev.haguel.expirenza_agent.sink;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.DishCategory;
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import dev.haguel.expirenza_agent.main.BatchDataExporter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Column-oriented dish files for analytics. Each file is the magic "EXPZCOL1" followed by one row group per batch:
+//   [varint rowCount] then per column: [encoding byte][varint chunk length][chunk]
+// Columns are captured_at, restaurant, url, category, sub_category, name, description and price, in that order.
+// Strings are either PLAIN (varint length + UTF-8 per row) or DICTIONARY (varint entry count, the entries as PLAIN,
+// then a varint index per row), whichever is smaller. captured_at is DELTA: the first value as varint epoch millis,
+// then a zigzag varint delta per row. price is PLAIN: a zigzag varint scale, then the unscaled value as varint length
+// + two's complement bytes. Absent strings are written as "", an absent price as scale 0 and length 0.
+public class ColumnarMenuSink implements BatchDataExporter<Restaurant>, Closeable {
+    private static final byte[] MAGIC = "EXPZCOL1".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte PLAIN = 0;
+    private static final byte DICTIONARY = 1;
+    private static final byte DELTA = 2;
+
+    private final RotatingFileWriter writer;
+    private final ByteArrayOutputStream chunk = new ByteArrayOutputStream(64 * 1024);
+    private final ByteArrayOutputStream dictionaryChunk = new ByteArrayOutputStream(64 * 1024);
+
+    public ColumnarMenuSink(Path directory, long rotateBytes, boolean gzip) throws IOException {
+        this.writer = new RotatingFileWriter(directory, "menus", "expzcol", rotateBytes, gzip, MAGIC);
+    }
+
+    @Override
+    public synchronized void exportAll(List<Restaurant> restaurants) {
+        long capturedAt = System.currentTimeMillis();
+        List<Restaurant> owners = new ArrayList<>();
+        List<Dish> dishes = new ArrayList<>();
+        for (Restaurant restaurant : restaurants) {
+            for (Dish dish : restaurant.getDishes() != null ? restaurant.getDishes() : List.<Dish>of()) {
+                owners.add(restaurant);
+                dishes.add(dish);
+            }
+        }
+        if (dishes.isEmpty()) {
+            return;
+        }
+
+        try {
+            OutputStream output = writer.stream();
+            writeVarLong(output, dishes.size());
+
+            chunk.reset();
+            writeVarLong(chunk, capturedAt);
+            // A batch is captured at one instant, so every delta is a single zero byte
+            for (int i = 1; i < dishes.size(); i++) {
+                writeVarLong(chunk, 0);
+            }
+            writeChunk(output, DELTA, chunk);
+
+            writeStringColumn(output, owners, dishes, (restaurant, dish) -> restaurant.getName());
+            writeStringColumn(output, owners, dishes, (restaurant, dish) -> restaurant.getUrl());
+            writeStringColumn(output, owners, dishes, (restaurant, dish) -> category(dish).getCategory());
+            writeStringColumn(output, owners, dishes, (restaurant, dish) -> category(dish).getSubCategory());
+            writeStringColumn(output, owners, dishes, (restaurant, dish) -> dish.getName());
+            writeStringColumn(output, owners, dishes, (restaurant, dish) -> dish.getDescription());
+
+            chunk.reset();
+            for (Dish dish : dishes) {
+                writePrice(chunk, dish.getPrice());
+            }
+            writeChunk(output, PLAIN, chunk);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write columnar export", e);
+        }
+    }
+
+    private interface ColumnValue {
+        String of(Restaurant restaurant, Dish dish);
+    }
+
+    private void writeStringColumn(OutputStream output, List<Restaurant> owners, List<Dish> dishes, ColumnValue column) throws IOException {
+        chunk.reset();
+        dictionaryChunk.reset();
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> entries = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>(dishes.size());
+        for (int i = 0; i < dishes.size(); i++) {
+            String value = column.of(owners.get(i), dishes.get(i));
+            value = value != null ? value : "";
+            writeString(chunk, value);
+            indexes.add(dictionary.computeIfAbsent(value, key -> {
+                entries.add(key);
+                return entries.size() - 1;
+            }));
+        }
+
+        writeVarLong(dictionaryChunk, entries.size());
+        for (String entry : entries) {
+            writeString(dictionaryChunk, entry);
+        }
+        for (int index : indexes) {
+            writeVarLong(dictionaryChunk, index);
+        }
+
+        if (dictionaryChunk.size() < chunk.size()) {
+            writeChunk(output, DICTIONARY, dictionaryChunk);
+        } else {
+            writeChunk(output, PLAIN, chunk);
+        }
+    }
+
+    private static DishCategory category(Dish dish) {
+        return dish.getDishCategory() != null ? dish.getDishCategory() : new DishCategory("", "");
+    }
+
+    private static void writeChunk(OutputStream output, byte encoding, ByteArrayOutputStream chunk) throws IOException {
+        output.write(encoding);
+        writeVarLong(output, chunk.size());
+        chunk.writeTo(output);
+    }
+
+    private static void writeString(OutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(output, bytes.length);
+        output.write(bytes);
+    }
+
+    private static void writePrice(OutputStream output, BigDecimal price) throws IOException {
+        if (price == null) {
+            writeVarLong(output, 0);
+            writeVarLong(output, 0);
+            return;
+        }
+        byte[] unscaled = price.unscaledValue().toByteArray();
+        writeVarLong(output, zigzag(price.scale()));
+        writeVarLong(output, unscaled.length);
+        output.write(unscaled);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void writeVarLong(OutputStream output, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            output.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,84 @@
+package dev.haguel.expirenza_agent.sink;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.DishCategory;
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import dev.haguel.expirenza_agent.main.BatchDataExporter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+// One RFC 4180 row per dish; every file starts with the header, so rotated files can be read independently
+public class CsvMenuSink implements BatchDataExporter<Restaurant>, Closeable {
+    private static final byte[] HEADER = "captured_at,restaurant,url,category,sub_category,name,description,price\r\n"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final RotatingFileWriter writer;
+    private final StringBuilder line = new StringBuilder(256);
+
+    public CsvMenuSink(Path directory, long rotateBytes, boolean gzip) throws IOException {
+        this.writer = new RotatingFileWriter(directory, "menus", "csv", rotateBytes, gzip, HEADER);
+    }
+
+    @Override
+    public synchronized void exportAll(List<Restaurant> restaurants) {
+        String capturedAt = Instant.now().toString();
+        try {
+            for (Restaurant restaurant : restaurants) {
+                OutputStream output = writer.stream();
+                for (Dish dish : restaurant.getDishes() != null ? restaurant.getDishes() : List.<Dish>of()) {
+                    DishCategory category = dish.getDishCategory();
+                    line.setLength(0);
+                    appendField(capturedAt).append(',');
+                    appendField(restaurant.getName()).append(',');
+                    appendField(restaurant.getUrl()).append(',');
+                    appendField(category != null ? category.getCategory() : null).append(',');
+                    appendField(category != null ? category.getSubCategory() : null).append(',');
+                    appendField(dish.getName()).append(',');
+                    appendField(dish.getDescription()).append(',');
+                    appendField(dish.getPrice() != null ? dish.getPrice().toPlainString() : null).append("\r\n");
+                    output.write(line.toString().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write CSV export", e);
+        }
+    }
+
+    private StringBuilder appendField(String value) {
+        if (value == null) {
+            return line;
+        }
+
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return line.append(value);
+        }
+
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        return line.append('"');
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,133 @@
+package dev.haguel.expirenza_agent.sink;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.DishKey;
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import dev.haguel.expirenza_agent.main.BatchDataExporter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.sql.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Keeps the current menu of every restaurant in a table keyed by restaurant and dish. A batch is one transaction:
+// every dish is upserted through a JDBC batch tagged with the batch's id, then rows of those restaurants carrying
+// another id are deleted. Prices are stored as DECFLOAT, so no scale is imposed and nothing is rounded.
+@Slf4j
+public class JdbcMenuSink implements BatchDataExporter<Restaurant>, Closeable {
+    private static final String CREATE_TABLE = """
+            CREATE TABLE IF NOT EXISTS menu_dishes (
+                restaurant VARCHAR(512) NOT NULL,
+                category VARCHAR(512) NOT NULL,
+                sub_category VARCHAR(512) NOT NULL,
+                name VARCHAR(1024) NOT NULL,
+                url VARCHAR(2048),
+                description VARCHAR(8192),
+                price DECFLOAT,
+                updated_at TIMESTAMP NOT NULL,
+                batch_id BIGINT NOT NULL,
+                PRIMARY KEY (restaurant, category, sub_category, name)
+            )""";
+    private static final String UPSERT = """
+            MERGE INTO menu_dishes (restaurant, category, sub_category, name, url, description, price, updated_at, batch_id)
+            KEY (restaurant, category, sub_category, name) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)""";
+    private static final String LAST_BATCH_ID = "SELECT COALESCE(MAX(batch_id), 0) FROM menu_dishes";
+    private static final String DELETE_REMOVED = "DELETE FROM menu_dishes WHERE restaurant = ? AND batch_id <> ?";
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private Connection connection;
+    // Two batches can fall into the same millisecond, so rows are told apart by batch rather than by update time
+    private long lastBatchId;
+
+    public JdbcMenuSink(String url, String username, String password) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+    }
+
+    @Override
+    public synchronized void exportAll(List<Restaurant> restaurants) {
+        if (restaurants.isEmpty()) {
+            return;
+        }
+
+        // The latest result wins when a restaurant was parsed more than once within a batch
+        Map<String, Restaurant> restaurantsByName = new LinkedHashMap<>();
+        for (Restaurant restaurant : restaurants) {
+            restaurantsByName.put(restaurant.getName(), restaurant);
+        }
+
+        try {
+            Connection connection = getConnection();
+            Timestamp updatedAt = new Timestamp(System.currentTimeMillis());
+            long batchId = ++lastBatchId;
+            try (PreparedStatement upsert = connection.prepareStatement(UPSERT);
+                 PreparedStatement delete = connection.prepareStatement(DELETE_REMOVED)) {
+                for (Restaurant restaurant : restaurantsByName.values()) {
+                    for (Dish dish : restaurant.getDishes() != null ? restaurant.getDishes() : List.<Dish>of()) {
+                        DishKey key = DishKey.of(dish);
+                        upsert.setString(1, restaurant.getName());
+                        upsert.setString(2, key.category());
+                        upsert.setString(3, key.subCategory());
+                        upsert.setString(4, key.name());
+                        upsert.setString(5, restaurant.getUrl());
+                        upsert.setString(6, dish.getDescription());
+                        upsert.setBigDecimal(7, dish.getPrice());
+                        upsert.setTimestamp(8, updatedAt);
+                        upsert.setLong(9, batchId);
+                        upsert.addBatch();
+                    }
+                    delete.setString(1, restaurant.getName());
+                    delete.setLong(2, batchId);
+                    delete.addBatch();
+                }
+                upsert.executeBatch();
+                delete.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to upsert " + restaurantsByName.size() + " menus into " + url, e);
+        }
+    }
+
+    private Connection getConnection() throws SQLException {
+        if (connection != null && connection.isValid(1)) {
+            return connection;
+        }
+        if (connection != null) {
+            connection.close();
+        }
+
+        connection = DriverManager.getConnection(url, username, password);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLE);
+            // Continues after the ids already stored, so a restarted sink never reuses the id of a restaurant's rows
+            try (ResultSet resultSet = statement.executeQuery(LAST_BATCH_ID)) {
+                resultSet.next();
+                lastBatchId = Math.max(lastBatchId, resultSet.getLong(1));
+            }
+        }
+        connection.setAutoCommit(false);
+        return connection;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.warn("Failed to close the menu database connection: {}", e.getMessage());
+        }
+        connection = null;
+    }
+}
@@ -0,0 +1,75 @@
+package dev.haguel.expirenza_agent.sink;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.DishCategory;
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import dev.haguel.expirenza_agent.main.BatchDataExporter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+// One JSON object per restaurant and line, streamed straight into the file without building a tree
+public class JsonLinesMenuSink implements BatchDataExporter<Restaurant>, Closeable {
+    private final RotatingFileWriter writer;
+    private final JsonFactory jsonFactory = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    public JsonLinesMenuSink(Path directory, long rotateBytes, boolean gzip) throws IOException {
+        this.writer = new RotatingFileWriter(directory, "menus", "jsonl", rotateBytes, gzip, new byte[0]);
+    }
+
+    @Override
+    public synchronized void exportAll(List<Restaurant> restaurants) {
+        String capturedAt = Instant.now().toString();
+        try {
+            for (Restaurant restaurant : restaurants) {
+                OutputStream output = writer.stream();
+                try (JsonGenerator generator = jsonFactory.createGenerator(output)) {
+                    writeRestaurant(generator, restaurant, capturedAt);
+                }
+                output.write('\n');
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write JSON Lines export", e);
+        }
+    }
+
+    private static void writeRestaurant(JsonGenerator generator, Restaurant restaurant, String capturedAt) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("capturedAt", capturedAt);
+        generator.writeStringField("restaurant", restaurant.getName());
+        generator.writeStringField("url", restaurant.getUrl());
+        generator.writeArrayFieldStart("dishes");
+        for (Dish dish : restaurant.getDishes() != null ? restaurant.getDishes() : List.<Dish>of()) {
+            DishCategory category = dish.getDishCategory();
+            generator.writeStartObject();
+            generator.writeStringField("category", category != null ? category.getCategory() : null);
+            generator.writeStringField("subCategory", category != null ? category.getSubCategory() : null);
+            generator.writeStringField("name", dish.getName());
+            generator.writeStringField("description", dish.getDescription());
+            if (dish.getPrice() != null) {
+                generator.writeNumberField("price", dish.getPrice());
+            } else {
+                generator.writeNullField("price");
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,114 @@
+package dev.haguel.expirenza_agent.sink;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.GZIPOutputStream;
+
+// Buffered, optionally gzipped output that starts a new file after maxBytes. Files are written under an
+// .inprogress suffix and renamed once complete, so downstream readers only ever pick up finished files.
+public class RotatingFileWriter implements Closeable {
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final String IN_PROGRESS_SUFFIX = ".inprogress";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final String prefix;
+    private final String extension;
+    private final long maxBytes;
+    private final boolean gzip;
+    private final byte[] fileHeader;
+
+    private final OutputStream countingStream = new CountingStream();
+    private OutputStream output;
+    private Path currentFile;
+    private long writtenBytes;
+    private int sequence;
+
+    // Counts uncompressed bytes, which is what rotation is based on
+    private class CountingStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            output.write(b);
+            writtenBytes++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            output.write(bytes, offset, length);
+            writtenBytes += length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
+    }
+
+    public RotatingFileWriter(Path directory, String prefix, String extension, long maxBytes, boolean gzip, byte[] fileHeader) throws IOException {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.extension = extension;
+        this.maxBytes = maxBytes;
+        this.gzip = gzip;
+        this.fileHeader = fileHeader;
+        Files.createDirectories(directory);
+    }
+
+    // Rotation only happens between writes, so a record is never split across two files
+    public OutputStream stream() throws IOException {
+        if (output != null && writtenBytes >= maxBytes) {
+            closeCurrent();
+        }
+        if (output == null) {
+            open();
+        }
+        return countingStream;
+    }
+
+    public void flush() throws IOException {
+        if (output != null) {
+            output.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeCurrent();
+    }
+
+    private void open() throws IOException {
+        String name = prefix + "-" + LocalDateTime.now().format(FILE_TIMESTAMP) + "-" + (sequence++) + "." + extension + (gzip ? ".gz" : "");
+        currentFile = directory.resolve(name + IN_PROGRESS_SUFFIX);
+        FileChannel channel = FileChannel.open(currentFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        OutputStream fileStream = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        // Sync flush makes every flushed batch readable by a streaming gunzip before the file is complete
+        output = gzip ? new BufferedOutputStream(new GZIPOutputStream(fileStream, BUFFER_SIZE, true), BUFFER_SIZE) : fileStream;
+        writtenBytes = 0;
+        if (fileHeader.length > 0) {
+            countingStream.write(fileHeader);
+        }
+    }
+
+    private void closeCurrent() throws IOException {
+        if (output == null) {
+            return;
+        }
+        output.close();
+        output = null;
+
+        String completeName = currentFile.getFileName().toString();
+        completeName = completeName.substring(0, completeName.length() - IN_PROGRESS_SUFFIX.length());
+        Files.move(currentFile, currentFile.resolveSibling(completeName), StandardCopyOption.ATOMIC_MOVE);
+        currentFile = null;
+    }
+}
@@ -0,0 +1,118 @@
+package dev.haguel.expirenza_agent.store;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.DishKey;
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import dev.haguel.expirenza_agent.utils.MenuFingerprints;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+// Remembers what this node last wrote to each restaurant's sheet, so an export only sends the dishes that changed
+@Component
+public class MenuFingerprintStore {
+
+    @Value("${store.fingerprints.path:data/menu-fingerprints.mv.db}")
+    private String path;
+
+    private MVStore store;
+    private MVMap<String, Long> menuHashes;
+    private MVMap<String, String> urls;
+
+    // firstExport means nothing is remembered about the sheet, so it may still hold dishes this node never wrote
+    public record MenuDiff(long menuHash, boolean unchanged, boolean firstExport, List<Dish> changedDishes, List<DishKey> removedDishes) {}
+
+    @PostConstruct
+    public void init() throws IOException {
+        Path file = Path.of(path).toAbsolutePath();
+        Files.createDirectories(file.getParent());
+        store = new MVStore.Builder().fileName(file.toString()).compress().open();
+        menuHashes = store.openMap("menus");
+        urls = store.openMap("urls");
+    }
+
+    public MenuDiff diff(Restaurant restaurant) {
+        long menuHash = MenuFingerprints.menuHash(restaurant.getDishes());
+        Long previousMenuHash = menuHashes.get(restaurant.getName());
+        if (previousMenuHash != null && previousMenuHash == menuHash) {
+            return new MenuDiff(menuHash, true, false, List.of(), List.of());
+        }
+
+        MVMap<String, Long> dishHashes = dishHashes(restaurant.getName());
+        Set<String> currentKeys = new HashSet<>();
+        List<Dish> changedDishes = new ArrayList<>();
+        for (Dish dish : restaurant.getDishes()) {
+            String key = DishKey.of(dish).encode();
+            currentKeys.add(key);
+
+            Long previousDishHash = dishHashes.get(key);
+            if (previousDishHash == null || previousDishHash != MenuFingerprints.dishHash(dish)) {
+                changedDishes.add(dish);
+            }
+        }
+
+        List<DishKey> removedDishes = new ArrayList<>();
+        for (String key : dishHashes.keySet()) {
+            if (!currentKeys.contains(key)) {
+                removedDishes.add(DishKey.decode(key));
+            }
+        }
+
+        return new MenuDiff(menuHash, false, previousMenuHash == null, changedDishes, removedDishes);
+    }
+
+    public void commit(Restaurant restaurant, MenuDiff diff) {
+        MVMap<String, Long> dishHashes = dishHashes(restaurant.getName());
+        for (Dish dish : diff.changedDishes()) {
+            dishHashes.put(DishKey.of(dish).encode(), MenuFingerprints.dishHash(dish));
+        }
+        for (DishKey removedDish : diff.removedDishes()) {
+            dishHashes.remove(removedDish.encode());
+        }
+        menuHashes.put(restaurant.getName(), diff.menuHash());
+        urls.put(restaurant.getName(), restaurant.getUrl());
+        store.commit();
+    }
+
+    // Drops everything remembered about the restaurants whose URL matches, and about those recorded without a URL.
+    // Returns how many restaurants were forgotten.
+    public int forget(Predicate<String> url) {
+        List<String> forgotten = new ArrayList<>();
+        for (String restaurantName : menuHashes.keySet()) {
+            String restaurantUrl = urls.get(restaurantName);
+            if (restaurantUrl == null || url.test(restaurantUrl)) {
+                forgotten.add(restaurantName);
+            }
+        }
+        for (String restaurantName : forgotten) {
+            menuHashes.remove(restaurantName);
+            urls.remove(restaurantName);
+            store.removeMap(dishHashes(restaurantName));
+        }
+        if (!forgotten.isEmpty()) {
+            store.commit();
+        }
+        return forgotten.size();
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        store.close();
+    }
+
+    private MVMap<String, Long> dishHashes(String restaurantName) {
+        return store.openMap("dishes:" + restaurantName);
+    }
+}
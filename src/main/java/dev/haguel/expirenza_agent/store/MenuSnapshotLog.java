@@ -0,0 +1,210 @@
+package dev.haguel.expirenza_agent.store;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import dev.haguel.expirenza_agent.utils.MenuFingerprints;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// Append-only archive of scraped menu versions in memory-mapped segment files, for reading offline. Every record is
+// [payload length][CRC32][payload] and records never straddle two segments. A menu is only appended when it differs
+// from the latest version of its restaurant, whose hash is rebuilt by scanning the segments on startup. A torn or
+// corrupt tail ends a segment and is overwritten by the next append. Once the segments outgrow maxSizeMb the oldest one
+// is deleted, so the archive keeps the most recent history. Restaurants are told apart by URL, since two restaurants
+// can share a name.
+@Component
+@Slf4j
+public class MenuSnapshotLog {
+
+    @Value("${store.snapshots.path:data/menu-snapshots}")
+    private String path;
+
+    @Value("${store.snapshots.segmentSizeMb:64}")
+    private int segmentSizeMb;
+
+    @Value("${store.snapshots.maxSizeMb:1024}")
+    private int maxSizeMb;
+
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    public record MenuSnapshot(String restaurantName, String url, long capturedAtMillis, long menuHash, List<Dish> dishes) {}
+
+    private static class Segment {
+        private final long id;
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+
+        private Segment(long id, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private final Map<String, Long> latestMenuHashes = new HashMap<>();
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final SnapshotCodec codec = new SnapshotCodec();
+
+    private Path directory;
+    private int segmentSize;
+    private long maxBytes;
+
+    @PostConstruct
+    public synchronized void init() throws IOException {
+        segmentSize = segmentSizeMb * 1024 * 1024;
+        maxBytes = (long) maxSizeMb * 1024 * 1024;
+        if (segmentSizeMb <= 0 || maxBytes < 2L * segmentSize) {
+            throw new IllegalArgumentException("store.snapshots.maxSizeMb must be at least twice store.snapshots.segmentSizeMb");
+        }
+
+        directory = Path.of(path).toAbsolutePath();
+        Files.createDirectories(directory);
+        recover();
+        if (segments.isEmpty()) {
+            segments.addLast(openSegment(1));
+        }
+    }
+
+    // Returns false without writing when the menu is identical to the latest version
+    public synchronized boolean append(Restaurant restaurant) throws IOException {
+        List<Dish> dishes = restaurant.getDishes() != null ? restaurant.getDishes() : List.of();
+        long menuHash = MenuFingerprints.menuHash(dishes);
+        String key = restaurantKey(restaurant.getUrl(), restaurant.getName());
+        Long latestMenuHash = latestMenuHashes.get(key);
+        if (latestMenuHash != null && latestMenuHash == menuHash) {
+            return false;
+        }
+
+        byte[] payload = codec.encode(new MenuSnapshot(restaurant.getName(), restaurant.getUrl(), System.currentTimeMillis(),
+                menuHash, dishes));
+        int recordBytes = payload.length + HEADER_BYTES;
+        if (recordBytes + Integer.BYTES > segmentSize) {
+            throw new IOException("Snapshot of " + restaurant.getName() + " is larger than a log segment");
+        }
+
+        Segment segment = segments.peekLast();
+        if (segment.writePosition + recordBytes + Integer.BYTES > segmentSize) {
+            segment = openSegment(segment.id + 1);
+            segments.addLast(segment);
+            dropOldSegments();
+        }
+
+        int position = segment.writePosition;
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        // Keeps a zero length after the record, which marks the end of the segment
+        segment.buffer.putInt(position + recordBytes, 0);
+        segment.buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+        segment.buffer.put(position + HEADER_BYTES, payload);
+        // The length goes in last, so a crash mid-write leaves a record that recovery treats as the end of the segment.
+        // Like the fingerprint store, it is not synced per append; the page cache survives a process crash.
+        segment.buffer.putInt(position, payload.length);
+        segment.writePosition = position + recordBytes;
+
+        latestMenuHashes.put(key, menuHash);
+        return true;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    @PreDestroy
+    public synchronized void cleanup() throws IOException {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+            segment.channel.close();
+        }
+        segments.clear();
+    }
+
+    // Restaurants whose latest version goes with a segment keep their hash, so the next crawl does not append it again
+    private void dropOldSegments() throws IOException {
+        while ((long) segments.size() * segmentSize > maxBytes && segments.size() > 1) {
+            Segment oldest = segments.pollFirst();
+            // The mapping itself goes away once the buffer is collected
+            oldest.channel.close();
+            Files.deleteIfExists(oldest.file);
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    ids.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring unexpected file in the snapshot log: {}", file);
+                }
+            }
+        }
+        Collections.sort(ids);
+
+        for (long id : ids) {
+            Segment segment = openSegment(id);
+            segments.addLast(segment);
+            recover(segment);
+        }
+        dropOldSegments();
+    }
+
+    private void recover(Segment segment) {
+        int position = 0;
+        while (position + HEADER_BYTES <= segmentSize) {
+            int length = segment.buffer.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > segmentSize) {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            segment.buffer.get(position + HEADER_BYTES, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != segment.buffer.getInt(position + Integer.BYTES)) {
+                log.warn("Ignoring corrupt menu snapshot in {} at {} and the rest of the segment", segment.file, position);
+                break;
+            }
+
+            MenuSnapshot snapshot = SnapshotCodec.decode(ByteBuffer.wrap(payload));
+            latestMenuHashes.put(restaurantKey(snapshot.url(), snapshot.restaurantName()), snapshot.menuHash());
+            position += HEADER_BYTES + length;
+        }
+
+        segment.writePosition = position;
+        if (position + HEADER_BYTES <= segmentSize) {
+            // Clears a torn record so a shorter append cannot leave its stale length or checksum behind
+            segment.buffer.putInt(position, 0);
+        }
+    }
+
+    // Snapshots of restaurants parsed without a URL fall back to the name
+    private static String restaurantKey(String url, String restaurantName) {
+        return url != null && !url.isEmpty() ? url : restaurantName;
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        Path file = directory.resolve(String.format("%012d%s", id, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new Segment(id, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+    }
+}
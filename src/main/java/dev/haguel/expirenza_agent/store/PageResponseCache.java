@@ -0,0 +1,321 @@
+package dev.haguel.expirenza_agent.store;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.PageCategory;
+import dev.haguel.expirenza_agent.metrics.AgentMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// Validators and extracted content of menu pages, so an unchanged page is neither downloaded again (when the site
+// answers conditional requests) nor parsed again. Records are [payload length][CRC32][payload] in memory-mapped
+// segment files, like in MenuSnapshotLog, and the latest record of a key wins. Live records are kept below half of
+// maxSizeMb by dropping the least recently used pages, each with a removal record so it stays dropped after a restart;
+// once the files outgrow maxSizeMb the oldest segment is compacted by copying its live records forward and deleting it.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PageResponseCache {
+    private final AgentMetrics agentMetrics;
+
+    @Value("${store.pageCache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${store.pageCache.path:data/page-cache}")
+    private String path;
+
+    @Value("${store.pageCache.segmentSizeMb:16}")
+    private int segmentSizeMb;
+
+    @Value("${store.pageCache.maxSizeMb:256}")
+    private int maxSizeMb;
+
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    // A restaurant page keeps its title and category links, a category page its dishes
+    public record CachedPage(String etag, String lastModified, long bodyHash, String title, List<PageCategory> links,
+                             List<Dish> dishes) {}
+
+    private static class Segment {
+        private final long id;
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private long liveBytes;
+        private int removals;
+
+        private Segment(long id, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private record Location(Segment segment, int position, int recordBytes) {}
+
+    // In access order, so iteration starts at the least recently used page
+    private final LinkedHashMap<String, Location> index = new LinkedHashMap<>(256, 0.75f, true);
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final SnapshotCodec codec = new SnapshotCodec();
+
+    private Path directory;
+    private int segmentSize;
+    private long maxBytes;
+    private long liveBytes;
+
+    @PostConstruct
+    public synchronized void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        segmentSize = segmentSizeMb * 1024 * 1024;
+        maxBytes = (long) maxSizeMb * 1024 * 1024;
+        if (segmentSizeMb <= 0 || maxBytes < 4L * segmentSize) {
+            throw new IllegalArgumentException("store.pageCache.maxSizeMb must be at least four times store.pageCache.segmentSizeMb");
+        }
+
+        directory = Path.of(path).toAbsolutePath();
+        Files.createDirectories(directory);
+        recover();
+        enforceLimits();
+
+        agentMetrics.gauge("expirenza.pagecache.entries", "Pages in the response cache", this::size);
+        agentMetrics.gauge("expirenza.pagecache.bytes", "Bytes of live records in the response cache", this::getLiveBytes);
+    }
+
+    public synchronized Optional<CachedPage> get(String key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Location location = index.get(key);
+        if (location == null) {
+            return Optional.empty();
+        }
+
+        byte[] payload = new byte[location.recordBytes() - HEADER_BYTES];
+        location.segment().buffer.get(location.position() + HEADER_BYTES, payload);
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        SnapshotCodec.decodeKey(buffer);
+        return Optional.of(SnapshotCodec.decodePage(buffer));
+    }
+
+    public synchronized void put(String key, CachedPage page) {
+        if (!enabled) {
+            return;
+        }
+        byte[] payload = codec.encode(key, page);
+        if (payload.length + HEADER_BYTES + Integer.BYTES > segmentSize) {
+            // Such a page is simply fetched and parsed in full every time
+            return;
+        }
+
+        try {
+            write(key, payload);
+            enforceLimits();
+        } catch (IOException e) {
+            agentMetrics.error("pageCache");
+            log.warn("Failed to cache the response of {}: {}", key, e.getMessage());
+        }
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    @PreDestroy
+    public synchronized void cleanup() {
+        for (Segment segment : segments) {
+            try {
+                segment.buffer.force();
+                segment.channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close page cache segment {}: {}", segment.file, e.getMessage());
+            }
+        }
+        segments.clear();
+        index.clear();
+    }
+
+    private void write(String key, byte[] payload) throws IOException {
+        index(key, append(payload));
+    }
+
+    private void writeRemoval(String key) throws IOException {
+        append(codec.encodeRemoval(key)).segment().removals++;
+    }
+
+    private Location append(byte[] payload) throws IOException {
+        int recordBytes = payload.length + HEADER_BYTES;
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.writePosition + recordBytes + Integer.BYTES > segmentSize) {
+            segment = openSegment(segment == null ? 1 : segment.id + 1);
+            segments.addLast(segment);
+        }
+
+        int position = segment.writePosition;
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        // Keeps a zero length after the record, which marks the end of the segment
+        segment.buffer.putInt(position + recordBytes, 0);
+        segment.buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+        segment.buffer.put(position + HEADER_BYTES, payload);
+        // The length goes in last, so a torn record ends the segment on recovery
+        segment.buffer.putInt(position, payload.length);
+        segment.writePosition = position + recordBytes;
+        return new Location(segment, position, recordBytes);
+    }
+
+    private void index(String key, Location location) {
+        Location previous = index.put(key, location);
+        if (previous != null) {
+            release(previous);
+        }
+        location.segment().liveBytes += location.recordBytes();
+        liveBytes += location.recordBytes();
+    }
+
+    private void release(Location location) {
+        location.segment().liveBytes -= location.recordBytes();
+        liveBytes -= location.recordBytes();
+    }
+
+    private void enforceLimits() throws IOException {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Location>> leastRecentlyUsed = index.entrySet().iterator();
+        while (liveBytes > maxBytes / 2 && leastRecentlyUsed.hasNext()) {
+            Map.Entry<String, Location> entry = leastRecentlyUsed.next();
+            release(entry.getValue());
+            leastRecentlyUsed.remove();
+            evicted.add(entry.getKey());
+        }
+        for (String key : evicted) {
+            writeRemoval(key);
+        }
+
+        // A removal record has to outlive the older records of its page, so a segment holding one is only deleted once
+        // no older segment is left
+        boolean oldest = true;
+        for (Iterator<Segment> iterator = segments.iterator(); iterator.hasNext(); ) {
+            Segment segment = iterator.next();
+            if (segment.liveBytes == 0 && segment != segments.peekLast() && (oldest || segment.removals == 0)) {
+                iterator.remove();
+                deleteSegment(segment);
+            } else {
+                oldest = false;
+            }
+        }
+        while ((long) segments.size() * segmentSize > maxBytes && segments.size() > 1) {
+            compact(segments.pollFirst());
+        }
+    }
+
+    // Copies the records still indexed in the segment to the newest one, then deletes it. Only the oldest segment is
+    // compacted, so its removal records have nothing left to remove and are dropped.
+    private void compact(Segment segment) throws IOException {
+        List<Map.Entry<String, Location>> live = new ArrayList<>();
+        for (Map.Entry<String, Location> entry : index.entrySet()) {
+            if (entry.getValue().segment() == segment) {
+                live.add(entry);
+            }
+        }
+        for (Map.Entry<String, Location> entry : live) {
+            Location location = entry.getValue();
+            byte[] payload = new byte[location.recordBytes() - HEADER_BYTES];
+            segment.buffer.get(location.position() + HEADER_BYTES, payload);
+            write(entry.getKey(), payload);
+        }
+        deleteSegment(segment);
+    }
+
+    private void recover() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    ids.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring unexpected file in the page cache: {}", file);
+                }
+            }
+        }
+        Collections.sort(ids);
+
+        for (long id : ids) {
+            Segment segment = openSegment(id);
+            segments.addLast(segment);
+            recover(segment);
+        }
+    }
+
+    // A torn or corrupt record ends the segment; the newest segment is appended to from there
+    private void recover(Segment segment) {
+        int position = 0;
+        while (position + HEADER_BYTES <= segmentSize) {
+            int length = segment.buffer.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > segmentSize) {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            segment.buffer.get(position + HEADER_BYTES, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != segment.buffer.getInt(position + Integer.BYTES)) {
+                log.warn("Ignoring corrupt page cache record in {} at {}", segment.file, position);
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.wrap(payload);
+            String key = SnapshotCodec.decodeKey(record);
+            if (record.hasRemaining()) {
+                index(key, new Location(segment, position, length + HEADER_BYTES));
+            } else {
+                Location removed = index.remove(key);
+                if (removed != null) {
+                    release(removed);
+                }
+                segment.removals++;
+            }
+            position += HEADER_BYTES + length;
+        }
+
+        segment.writePosition = position;
+        if (position + HEADER_BYTES <= segmentSize) {
+            segment.buffer.putInt(position, 0);
+        }
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        Path file = directory.resolve(String.format("%012d%s", id, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new Segment(id, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+    }
+
+    // The mapping itself goes away once the buffer is collected
+    private void deleteSegment(Segment segment) throws IOException {
+        segment.channel.close();
+        Files.deleteIfExists(segment.file);
+    }
+}
@@ -0,0 +1,184 @@
+package dev.haguel.expirenza_agent.store;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.DishCategory;
+import dev.haguel.expirenza_agent.entity.PageCategory;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Varint lengths, UTF-8 strings and unscaled prices; absent strings are written as length 0 and read back as ""
+class SnapshotCodec {
+    private byte[] buffer = new byte[8192];
+    private int size;
+
+    byte[] encode(MenuSnapshotLog.MenuSnapshot snapshot) {
+        size = 0;
+        writeLong(snapshot.capturedAtMillis());
+        writeLong(snapshot.menuHash());
+        writeString(snapshot.restaurantName());
+        writeString(snapshot.url());
+        writeDishes(snapshot.dishes());
+        return Arrays.copyOf(buffer, size);
+    }
+
+    // Null validators are written as "" and read back as null
+    byte[] encode(String key, PageResponseCache.CachedPage page) {
+        size = 0;
+        writeString(key);
+        writeString(page.etag());
+        writeString(page.lastModified());
+        writeLong(page.bodyHash());
+        writeString(page.title());
+        writeVarInt(page.links().size());
+        for (PageCategory link : page.links()) {
+            writeString(link.name());
+            writeString(link.url());
+        }
+        writeDishes(page.dishes());
+        return Arrays.copyOf(buffer, size);
+    }
+
+    // Only the key, which no page record ends after
+    byte[] encodeRemoval(String key) {
+        size = 0;
+        writeString(key);
+        return Arrays.copyOf(buffer, size);
+    }
+
+    static MenuSnapshotLog.MenuSnapshot decode(ByteBuffer payload) {
+        long capturedAtMillis = payload.getLong();
+        long menuHash = payload.getLong();
+        String restaurantName = readString(payload);
+        String url = readString(payload);
+
+        List<Dish> dishes = readDishes(payload);
+        return new MenuSnapshotLog.MenuSnapshot(restaurantName, url, capturedAtMillis, menuHash, dishes);
+    }
+
+    static String decodeKey(ByteBuffer payload) {
+        return readString(payload);
+    }
+
+    // Expects the key to have been read already
+    static PageResponseCache.CachedPage decodePage(ByteBuffer payload) {
+        String etag = emptyToNull(readString(payload));
+        String lastModified = emptyToNull(readString(payload));
+        long bodyHash = payload.getLong();
+        String title = readString(payload);
+
+        int linkCount = readVarInt(payload);
+        List<PageCategory> links = new ArrayList<>(linkCount);
+        for (int i = 0; i < linkCount; i++) {
+            links.add(new PageCategory(readString(payload), readString(payload)));
+        }
+        return new PageResponseCache.CachedPage(etag, lastModified, bodyHash, title, links, readDishes(payload));
+    }
+
+    private void writeDishes(List<Dish> dishes) {
+        writeVarInt(dishes.size());
+        for (Dish dish : dishes) {
+            DishCategory category = dish.getDishCategory();
+            writeString(category != null ? category.getCategory() : null);
+            writeString(category != null ? category.getSubCategory() : null);
+            writeString(dish.getName());
+            writeString(dish.getDescription());
+            writePrice(dish.getPrice());
+        }
+    }
+
+    private static List<Dish> readDishes(ByteBuffer payload) {
+        int dishCount = readVarInt(payload);
+        List<Dish> dishes = new ArrayList<>(dishCount);
+        DishCategory previousCategory = null;
+        for (int i = 0; i < dishCount; i++) {
+            String category = readString(payload);
+            String subCategory = readString(payload);
+            // Consecutive dishes of a subcategory share one category object, as they do after extraction
+            if (previousCategory == null || !previousCategory.getCategory().equals(category)
+                    || !previousCategory.getSubCategory().equals(subCategory)) {
+                previousCategory = new DishCategory(category, subCategory);
+            }
+            dishes.add(Dish.builder()
+                    .name(readString(payload))
+                    .dishCategory(previousCategory)
+                    .description(readString(payload))
+                    .price(readPrice(payload))
+                    .build());
+        }
+        return dishes;
+    }
+
+    private void writeLong(long value) {
+        ensureCapacity(Long.BYTES);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7f) != 0) {
+            buffer[size++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        writeVarInt(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void writeString(String value) {
+        writeBytes(value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+    }
+
+    private void writePrice(BigDecimal price) {
+        BigDecimal value = price != null ? price : BigDecimal.ZERO;
+        writeVarInt(value.scale());
+        writeBytes(value.unscaledValue().toByteArray());
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+        }
+    }
+
+    private static int readVarInt(ByteBuffer payload) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = payload.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer payload) {
+        int length = readVarInt(payload);
+        String value = new String(payload.array(), payload.arrayOffset() + payload.position(), length, StandardCharsets.UTF_8);
+        payload.position(payload.position() + length);
+        return value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static BigDecimal readPrice(ByteBuffer payload) {
+        int scale = readVarInt(payload);
+        byte[] unscaled = new byte[readVarInt(payload)];
+        payload.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+}
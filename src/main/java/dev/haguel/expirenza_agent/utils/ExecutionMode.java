@@ -0,0 +1,6 @@
+package dev.haguel.expirenza_agent.utils;
+
+public enum ExecutionMode {
+    PLATFORM,
+    VIRTUAL
+}
@@ -1,21 +1,39 @@
 package dev.haguel.expirenza_agent.utils;
 
+import lombok.extern.slf4j.Slf4j;
+
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+@Slf4j
 public class ExecutorUtil {
+    public static ExecutorService newExecutor(ExecutionMode mode, int platformThreads) {
+        return mode == ExecutionMode.VIRTUAL
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(platformThreads);
+    }
+
+    public static ExecutorService newElasticExecutor(ExecutionMode mode) {
+        return mode == ExecutionMode.VIRTUAL
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newCachedThreadPool();
+    }
+
     public static void addShutdownHook(ExecutorService executor) {
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            executor.shutdown();
-            try {
-                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
-                    executor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(executor, 10)));
+    }
+
+    public static void shutdown(ExecutorService executor, long timeoutSeconds) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
                 executor.shutdownNow();
-                Thread.currentThread().interrupt();
             }
-            System.out.println("Executor has been shutdown");
-        }));
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        log.info("Executor has been shutdown");
     }
 }
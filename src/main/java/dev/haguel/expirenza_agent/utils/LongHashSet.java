@@ -0,0 +1,103 @@
+package dev.haguel.expirenza_agent.utils;
+
+import java.util.Arrays;
+
+// Set of primitive longs. Open addressing with linear probing over one array, so an entry costs 8 bytes at full load
+// and neither a lookup nor an insert allocates. Zero marks a free slot and is tracked separately.
+public class LongHashSet {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private boolean containsZero;
+    private int size;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongHashSet(int expectedSize) {
+        keys = new long[tableSize(expectedSize)];
+    }
+
+    // Returns false when the key was already in the set
+    public boolean add(long key) {
+        if (key == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        for (; keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return false;
+            }
+        }
+        keys[slot] = key;
+        size++;
+        return true;
+    }
+
+    public boolean contains(long key) {
+        if (key == 0) {
+            return containsZero;
+        }
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Keeps the table, since the set is usually filled to about the same size again
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, 0);
+            containsZero = false;
+            size = 0;
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        keys = new long[capacity];
+        int mask = capacity - 1;
+        for (long key : oldKeys) {
+            if (key == 0) {
+                continue;
+            }
+            int slot = slot(key, mask);
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+        }
+    }
+
+    // Keeps the load factor at or below one half
+    private static int tableSize(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
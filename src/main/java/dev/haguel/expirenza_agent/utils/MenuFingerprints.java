@@ -0,0 +1,60 @@
+package dev.haguel.expirenza_agent.utils;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.DishCategory;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+// 64-bit FNV-1a over the exported fields; stable across JVM runs unlike String.hashCode-based combinations.
+// Absent fields hash like the values the store's codec reads back for them, an empty string and a zero price, so a
+// menu decoded from a snapshot or the page cache keeps the hash it was stored with.
+public class MenuFingerprints {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    public static long dishHash(Dish dish) {
+        DishCategory category = dish.getDishCategory();
+        long hash = FNV_OFFSET_BASIS;
+        hash = mix(hash, category != null ? category.getCategory() : null);
+        hash = mix(hash, category != null ? category.getSubCategory() : null);
+        hash = mix(hash, dish.getName());
+        hash = mix(hash, dish.getDescription());
+        hash = mix(hash, (dish.getPrice() != null ? dish.getPrice() : BigDecimal.ZERO).stripTrailingZeros().toPlainString());
+        return hash;
+    }
+
+    public static long menuHash(List<Dish> dishes) {
+        long hash = FNV_OFFSET_BASIS;
+        for (Dish dish : dishes) {
+            hash = mix(hash, dishHash(dish));
+        }
+        return hash;
+    }
+
+    // Tells whether a page body changed since it was last fetched
+    public static long textHash(String text) {
+        return mix(FNV_OFFSET_BASIS, text);
+    }
+
+    private static long mix(long hash, String value) {
+        if (value == null) {
+            value = "";
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        // Field terminator, so ("ab", "c") and ("a", "bc") differ
+        return (hash ^ 0x1f) * FNV_PRIME;
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash = (hash ^ (value & 0xff)) * FNV_PRIME;
+            value >>>= 8;
+        }
+        return hash;
+    }
+}
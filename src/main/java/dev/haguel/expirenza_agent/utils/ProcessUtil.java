@@ -0,0 +1,55 @@
+package dev.haguel.expirenza_agent.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public class ProcessUtil {
+    private static final Path PROC = Path.of("/proc");
+
+    public static Optional<ProcessHandle> findDescendant(String commandLineFragment) {
+        return ProcessHandle.current().descendants()
+                .filter(process -> process.info().commandLine()
+                        .map(commandLine -> commandLine.contains(commandLineFragment))
+                        .orElse(false))
+                .findFirst();
+    }
+
+    /**
+     * Resident set size of the process and all its descendants, or -1 when it cannot be read
+     * (non-Linux hosts or processes that already exited).
+     */
+    public static long residentSetSizeBytes(ProcessHandle root) {
+        if (!Files.isDirectory(PROC)) {
+            return -1;
+        }
+
+        long total = 0;
+        for (ProcessHandle process : Stream.concat(Stream.of(root), root.descendants()).toList()) {
+            long rss = readResidentSetSizeBytes(process.pid());
+            if (rss < 0) {
+                continue;
+            }
+            total += rss;
+        }
+        return total;
+    }
+
+    private static long readResidentSetSizeBytes(long pid) {
+        try {
+            List<String> lines = Files.readAllLines(PROC.resolve(Long.toString(pid)).resolve("status"));
+            for (String line : lines) {
+                if (line.startsWith("VmRSS:")) {
+                    String kilobytes = line.substring("VmRSS:".length()).replace("kB", "").trim();
+                    return Long.parseLong(kilobytes) * 1024;
+                }
+            }
+            return -1;
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package dev.haguel.expirenza_agent.webdriver;
+
+import io.github.bonigarcia.wdm.WebDriverManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Finds the chromedriver binary once per process. A pinned webdriver.chromedriver.path is used as is. Otherwise the
+// binary WebDriverManager resolved before is taken straight from its cache, so a restart needs neither the network nor
+// WebDriverManager's version lookup; WebDriverManager is only asked when there is no such binary yet, or when the
+// browser refused it, which usually means the browser was updated. The resolved binary is recorded per requested
+// version, so changing webdriver.chromedriver.version never picks up the driver of the previous one.
+@Component
+@Slf4j
+public class ChromeDriverResolver {
+    private static final String RESOLVED_PATH_FILE = "chromedriver.path";
+    private static final String VERSIONED_PATH_FILE = "chromedriver-%s.path";
+
+    @Value("${webdriver.chromedriver.path:}")
+    private String pinnedPath;
+
+    @Value("${webdriver.chromedriver.version:}")
+    private String version;
+
+    @Value("${webdriver.chromedriver.cachePath:./data/webdriver}")
+    private String cachePath;
+
+    private File driver;
+
+    // Throws when no driver can be found, e.g. offline with an empty cache
+    public synchronized File resolve() {
+        if (driver == null) {
+            driver = find();
+        }
+        return driver;
+    }
+
+    // Resolves the driver through WebDriverManager again, unless another session did so since rejected was handed out.
+    // Returns rejected itself when a pinned driver was refused, as there is nothing else to try.
+    public synchronized File refresh(File rejected) {
+        if (driver != null && !driver.equals(rejected)) {
+            return driver;
+        }
+        if (!pinnedPath.isBlank()) {
+            return rejected;
+        }
+        driver = resolveWithManager();
+        return driver;
+    }
+
+    private File find() {
+        if (!pinnedPath.isBlank()) {
+            File pinned = new File(pinnedPath);
+            if (!pinned.canExecute()) {
+                throw new IllegalStateException("webdriver.chromedriver.path " + pinnedPath + " is not an executable file");
+            }
+            return pinned;
+        }
+
+        File cached = readResolvedPath();
+        if (cached != null) {
+            return cached;
+        }
+        return resolveWithManager();
+    }
+
+    private File resolveWithManager() {
+        WebDriverManager manager = WebDriverManager.chromedriver().cachePath(cachePath);
+        if (!version.isBlank()) {
+            manager.driverVersion(version);
+        }
+        manager.setup();
+
+        File resolved = new File(manager.getDownloadedDriverPath());
+        writeResolvedPath(resolved);
+        log.info("Resolved chromedriver {}", resolved);
+        return resolved;
+    }
+
+    private File readResolvedPath() {
+        Path record = resolvedPathRecord();
+        if (!Files.isRegularFile(record)) {
+            return null;
+        }
+        try {
+            File cached = new File(Files.readString(record).trim());
+            return cached.canExecute() ? cached : null;
+        } catch (IOException e) {
+            log.warn("Failed to read the cached chromedriver path: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeResolvedPath(File resolved) {
+        try {
+            Path record = resolvedPathRecord();
+            Files.createDirectories(record.getParent());
+            Files.writeString(record, resolved.getAbsolutePath());
+        } catch (IOException e) {
+            // The next start asks WebDriverManager again
+            log.warn("Failed to cache the chromedriver path: {}", e.getMessage());
+        }
+    }
+
+    private Path resolvedPathRecord() {
+        if (version.isBlank()) {
+            return Path.of(cachePath, RESOLVED_PATH_FILE);
+        }
+        return Path.of(cachePath, String.format(VERSIONED_PATH_FILE, version.trim().replaceAll("[^A-Za-z0-9._-]", "_")));
+    }
+}
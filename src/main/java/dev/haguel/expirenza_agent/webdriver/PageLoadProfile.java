@@ -0,0 +1,199 @@
+package dev.haguel.expirenza_agent.webdriver;
+
+import dev.haguel.expirenza_agent.metrics.AgentMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.PageLoadStrategy;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.chromium.HasCdp;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lean page-load profile of the browser sessions. The parser only reads the text of the menu, so sessions stop at
+// DOMContentLoaded (PageLoadStrategy.EAGER), never decode images and have stylesheets, fonts, media and tracker
+// requests blocked through the DevTools protocol. Every baselineEvery-th page is loaded without the URL blocking and
+// waited on up to the load event, and the difference to the lean pages is published as the bytes and time saved by
+// the URL blocking and the eager load. The image preference is fixed when a session starts, so the baseline pages
+// still skip images and their savings are not part of the figures.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PageLoadProfile {
+    // Network.setBlockedURLs matches URL patterns only, so resource types are expressed through their file extensions
+    private static final Map<String, List<String>> RESOURCE_TYPE_PATTERNS = Map.of(
+            "Stylesheet", List.of("*.css", "*.css?*"),
+            "Font", List.of("*.woff", "*.woff2", "*.ttf", "*.otf", "*.eot", "*.woff?*", "*.woff2?*", "*.ttf?*"),
+            "Image", List.of("*.jpg", "*.jpeg", "*.png", "*.gif", "*.webp", "*.avif", "*.svg", "*.ico",
+                    "*.jpg?*", "*.jpeg?*", "*.png?*", "*.webp?*"),
+            "Media", List.of("*.mp4", "*.webm", "*.mp3", "*.ogg", "*.m3u8")
+    );
+    // Cross-origin resources served without Timing-Allow-Origin report a transfer size of 0
+    private static final String TRANSFERRED_BYTES_SCRIPT = """
+            let bytes = 0;
+            for (const entry of performance.getEntriesByType('navigation')) bytes += entry.transferSize;
+            for (const entry of performance.getEntriesByType('resource')) bytes += entry.transferSize;
+            return bytes;""";
+    private static final String LEAN = "lean";
+    private static final String UNBLOCKED = "unblocked";
+
+    private final AgentMetrics agentMetrics;
+
+    @Value("${webdriver.lean.enabled:true}")
+    private boolean enabled;
+
+    @Value("${webdriver.lean.disableImages:true}")
+    private boolean disableImages;
+
+    @Value("${webdriver.lean.blockedResourceTypes:Stylesheet,Font,Image,Media}")
+    private String[] blockedResourceTypes;
+
+    @Value("${webdriver.lean.blockedUrlPatterns:*google-analytics.com*,*googletagmanager.com*,*doubleclick.net*,*connect.facebook.net*,*facebook.com/tr*,*mc.yandex.ru*,*hotjar.com*,*clarity.ms*}")
+    private String[] blockedUrlPatterns;
+
+    @Value("${webdriver.lean.baselineEvery:50}")
+    private int baselineEvery;
+
+    private List<String> blockedUrls = List.of();
+    private final AtomicLong pagesLoaded = new AtomicLong();
+    private final PageTotals leanPages = new PageTotals();
+    private final PageTotals unblockedPages = new PageTotals();
+
+    @PostConstruct
+    public void init() {
+        List<String> patterns = new ArrayList<>();
+        for (String type : blockedResourceTypes) {
+            List<String> typePatterns = RESOURCE_TYPE_PATTERNS.get(type.trim());
+            if (typePatterns == null) {
+                throw new IllegalArgumentException("Unknown webdriver.lean.blockedResourceTypes entry " + type
+                        + ", expected one of " + RESOURCE_TYPE_PATTERNS.keySet());
+            }
+            patterns.addAll(typePatterns);
+        }
+        for (String pattern : blockedUrlPatterns) {
+            if (!pattern.isBlank()) {
+                patterns.add(pattern.trim());
+            }
+        }
+        blockedUrls = List.copyOf(patterns);
+
+        agentMetrics.gauge("expirenza.page.blockedUrlSavedBytes", "Mean bytes per page saved by URL blocking and the eager load",
+                () -> saved(unblockedPages.meanBytes(), leanPages.meanBytes()));
+        agentMetrics.gauge("expirenza.page.blockedUrlSavedMillis", "Mean load time per page saved by URL blocking and the eager load",
+                () -> saved(unblockedPages.meanMillis(), leanPages.meanMillis()));
+    }
+
+    void configure(ChromeOptions options) {
+        if (!enabled) {
+            return;
+        }
+        options.setPageLoadStrategy(PageLoadStrategy.EAGER);
+        if (disableImages) {
+            options.setExperimentalOption("prefs", Map.of("profile.managed_default_content_settings.images", 2));
+        }
+    }
+
+    // Returns whether the next page of the session loads lean, switching the URL blocking on or off to match
+    boolean prepare(WebDriverKit kit) {
+        if (!enabled) {
+            return false;
+        }
+        boolean lean = baselineEvery <= 0 || pagesLoaded.incrementAndGet() % baselineEvery != 0;
+        if (kit.getUrlsBlocked() == null || kit.getUrlsBlocked() != lean) {
+            block(kit, lean);
+        }
+        return lean;
+    }
+
+    void record(WebDriverKit kit, boolean lean, long startNanos) {
+        if (enabled && !lean) {
+            waitForLoadEvent(kit);
+        }
+        long nanos = System.nanoTime() - startNanos;
+        long bytes = transferredBytes(kit.getWebDriver());
+        String profile = lean ? LEAN : UNBLOCKED;
+        agentMetrics.recordPageLoad(profile, bytes, startNanos);
+        if (enabled && bytes >= 0) {
+            (lean ? leanPages : unblockedPages).add(bytes, nanos);
+        }
+    }
+
+    // Nothing is reported until pages of both kinds were measured
+    private long saved(long unblocked, long lean) {
+        return leanPages.isEmpty() || unblockedPages.isEmpty() ? 0 : unblocked - lean;
+    }
+
+    private void block(WebDriverKit kit, boolean lean) {
+        if (!(kit.getWebDriver() instanceof HasCdp cdp)) {
+            return;
+        }
+        try {
+            if (kit.getUrlsBlocked() == null) {
+                cdp.executeCdpCommand("Network.enable", Map.of());
+            }
+            cdp.executeCdpCommand("Network.setBlockedURLs", Map.of("urls", lean ? blockedUrls : List.of()));
+            kit.setUrlsBlocked(lean);
+        } catch (WebDriverException e) {
+            // The page still loads, only with everything the site asks for
+            agentMetrics.error("webdriver.cdp");
+            log.warn("Failed to set blocked URLs of a WebDriver session: {}", e.getMessage());
+        }
+    }
+
+    // Baseline pages stand for the default page load strategy, which waits for the load event before handing the page over
+    private static void waitForLoadEvent(WebDriverKit kit) {
+        try {
+            kit.getWebDriverWait().until(driver ->
+                    "complete".equals(((JavascriptExecutor) driver).executeScript("return document.readyState")));
+        } catch (TimeoutException e) {
+            log.warn("Baseline page did not finish loading: {}", e.getMessage());
+        }
+    }
+
+    private static long transferredBytes(WebDriver driver) {
+        if (!(driver instanceof JavascriptExecutor executor)) {
+            return -1;
+        }
+        try {
+            Object bytes = executor.executeScript(TRANSFERRED_BYTES_SCRIPT);
+            return bytes instanceof Number number ? number.longValue() : -1;
+        } catch (WebDriverException e) {
+            return -1;
+        }
+    }
+
+    private static class PageTotals {
+        private final LongAdder pages = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        void add(long pageBytes, long pageNanos) {
+            pages.increment();
+            bytes.add(pageBytes);
+            nanos.add(pageNanos);
+        }
+
+        boolean isEmpty() {
+            return pages.sum() == 0;
+        }
+
+        long meanBytes() {
+            long count = pages.sum();
+            return count == 0 ? 0 : bytes.sum() / count;
+        }
+
+        long meanMillis() {
+            long count = pages.sum();
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(nanos.sum() / count);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package dev.haguel.expirenza_agent.webdriver;
+
+import dev.haguel.expirenza_agent.utils.ProcessUtil;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chrome.ChromeDriverService;
+import org.openqa.selenium.support.ui.WebDriverWait;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Getter
+public class WebDriverKit {
+    private final WebDriver webDriver;
+    private final WebDriverWait webDriverWait;
+    private final ChromeDriverService driverService;
+    private final long createdAtMillis = System.currentTimeMillis();
+    private final AtomicInteger pagesLoaded = new AtomicInteger();
+    private final PageLoadProfile pageLoadProfile;
+
+    // Whether the lean profile's URL blocking is on in this session, null until it was first set
+    @Setter(AccessLevel.PACKAGE)
+    private volatile Boolean urlsBlocked;
+
+    // Page count at the last look at the session's memory, which walks the process tree and is too slow for every release
+    @Setter(AccessLevel.PACKAGE)
+    private volatile int pagesAtMemoryCheck;
+
+    private volatile ProcessHandle driverProcess;
+
+    WebDriverKit(WebDriver webDriver, WebDriverWait webDriverWait, ChromeDriverService driverService, PageLoadProfile pageLoadProfile) {
+        this.webDriver = webDriver;
+        this.webDriverWait = webDriverWait;
+        this.driverService = driverService;
+        this.pageLoadProfile = pageLoadProfile;
+    }
+
+    public void load(String url) {
+        boolean lean = pageLoadProfile.prepare(this);
+        long start = System.nanoTime();
+        webDriver.get(url);
+        pagesLoaded.incrementAndGet();
+        pageLoadProfile.record(this, lean, start);
+    }
+
+    boolean isAlive() {
+        try {
+            webDriver.getWindowHandle();
+            return true;
+        } catch (WebDriverException e) {
+            return false;
+        }
+    }
+
+    long residentSetSizeBytes() {
+        return findDriverProcess()
+                .map(ProcessUtil::residentSetSizeBytes)
+                .orElse(-1L);
+    }
+
+    void quit() {
+        try {
+            webDriver.quit();
+        } finally {
+            driverService.stop();
+        }
+    }
+
+    private Optional<ProcessHandle> findDriverProcess() {
+        if (driverProcess == null || !driverProcess.isAlive()) {
+            driverProcess = ProcessUtil.findDescendant("--port=" + driverService.getUrl().getPort()).orElse(null);
+        }
+        return Optional.ofNullable(driverProcess);
+    }
+}
@@ -0,0 +1,296 @@
+package dev.haguel.expirenza_agent.webdriver;
+
+import dev.haguel.expirenza_agent.metrics.AgentMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.openqa.selenium.SessionNotCreatedException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeDriverService;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.support.ui.WebDriverWait;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class WebDriverPool {
+    private final AgentMetrics agentMetrics;
+    private final PageLoadProfile pageLoadProfile;
+    private final ChromeDriverResolver driverResolver;
+
+    @Value("${webdriver.pool.maxSize:4}")
+    private int maxSize;
+
+    // Unset, no session is started while the HTTP fast path parses most pages and one otherwise, so a browser that may
+    // never be needed neither slows down startup nor holds memory
+    @Value("${webdriver.pool.warmUpSize:-1}")
+    private int warmUpSize;
+
+    @Value("${parser.http.enabled:true}")
+    private boolean httpParserEnabled;
+
+    @Value("${webdriver.pool.maxPagesPerSession:200}")
+    private int maxPagesPerSession;
+
+    @Value("${webdriver.pool.maxRssMb:1024}")
+    private long maxRssMb;
+
+    @Value("${webdriver.pool.memoryCheckEveryPages:25}")
+    private int memoryCheckEveryPages;
+
+    @Value("${webdriver.pool.leaseTimeoutSeconds:120}")
+    private long leaseTimeoutSeconds;
+
+    @Value("${webdriver.pool.waitTimeoutSeconds:20}")
+    private long waitTimeoutSeconds;
+
+    private Semaphore permits;
+    private final BlockingDeque<WebDriverKit> idleKits = new LinkedBlockingDeque<>();
+    private final Set<WebDriverKit> allKits = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong recycled = new AtomicLong();
+    private final AtomicLong failedHealthChecks = new AtomicLong();
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong leaseWaitNanos = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxSize, true);
+        registerGauges();
+        try {
+            driverResolver.resolve();
+        } catch (RuntimeException e) {
+            // Pages that do not need a browser can still be parsed; sessions fail when they are leased
+            log.warn("Failed to resolve chromedriver: {}", e.getMessage());
+            return;
+        }
+        warmUp();
+    }
+
+    public WebDriverKit lease() throws InterruptedException, TimeoutException {
+        long start = System.nanoTime();
+        if (!permits.tryAcquire(leaseTimeoutSeconds, TimeUnit.SECONDS)) {
+            throw new TimeoutException("No WebDriver session became available within " + leaseTimeoutSeconds + "s");
+        }
+        leaseWaitNanos.addAndGet(System.nanoTime() - start);
+        leases.incrementAndGet();
+
+        try {
+            return takeHealthyOrCreate();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // Only hands out a session that is already running, so a caller that can do without one never waits for a
+    // browser to start
+    public Optional<WebDriverKit> tryLeaseIdle() {
+        if (!permits.tryAcquire()) {
+            return Optional.empty();
+        }
+
+        WebDriverKit kit;
+        while ((kit = idleKits.pollFirst()) != null) {
+            if (kit.isAlive()) {
+                leases.incrementAndGet();
+                return Optional.of(kit);
+            }
+            failedHealthChecks.incrementAndGet();
+            destroy(kit);
+        }
+        permits.release();
+        return Optional.empty();
+    }
+
+    public void release(WebDriverKit kit) {
+        try {
+            if (needsRecycling(kit, false)) {
+                recycled.incrementAndGet();
+                destroy(kit);
+            } else {
+                idleKits.offerFirst(kit);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    public void invalidate(WebDriverKit kit) {
+        try {
+            destroy(kit);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${webdriver.pool.healthCheckIntervalMillis:60000}")
+    public void checkIdleSessions() {
+        List<WebDriverKit> checked = new ArrayList<>();
+        WebDriverKit kit;
+        while ((kit = idleKits.pollLast()) != null) {
+            if (kit.isAlive() && !needsRecycling(kit, true)) {
+                checked.add(kit);
+            } else {
+                failedHealthChecks.incrementAndGet();
+                destroy(kit);
+            }
+        }
+        checked.forEach(idleKits::offerLast);
+    }
+
+    public WebDriverPoolMetrics getMetrics() {
+        int idle = idleKits.size();
+        return new WebDriverPoolMetrics(
+                maxSize,
+                idle,
+                Math.max(0, allKits.size() - idle),
+                created.get(),
+                recycled.get(),
+                failedHealthChecks.get(),
+                leases.get(),
+                TimeUnit.NANOSECONDS.toMillis(leaseWaitNanos.get())
+        );
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        for (WebDriverKit kit : allKits) {
+            destroy(kit);
+        }
+        idleKits.clear();
+    }
+
+    private void registerGauges() {
+        agentMetrics.gauge("expirenza.webdriver.sessions", "WebDriver sessions by state", () -> getMetrics().idle(), "state", "idle");
+        agentMetrics.gauge("expirenza.webdriver.sessions", "WebDriver sessions by state", () -> getMetrics().leased(), "state", "leased");
+        agentMetrics.gauge("expirenza.webdriver.created", "WebDriver sessions started since startup", created::get);
+        agentMetrics.gauge("expirenza.webdriver.recycled", "WebDriver sessions recycled for page count or memory", recycled::get);
+        agentMetrics.gauge("expirenza.webdriver.failedHealthChecks", "WebDriver sessions discarded as unhealthy", failedHealthChecks::get);
+    }
+
+    // Browsers start in parallel, so warming up several sessions takes about as long as one. The pool is initialised
+    // before the scheduler starts, so the first crawl tick finds the sessions ready.
+    private void warmUp() {
+        int sessionsToCreate = Math.min(warmUpSize >= 0 ? warmUpSize : httpParserEnabled ? 0 : 1, maxSize);
+        if (sessionsToCreate <= 0) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<WebDriverKit>> sessions = new ArrayList<>();
+            for (int i = 0; i < sessionsToCreate; i++) {
+                sessions.add(executor.submit(this::createWebDriverKit));
+            }
+            for (Future<WebDriverKit> session : sessions) {
+                try {
+                    idleKits.offerLast(session.get());
+                } catch (ExecutionException e) {
+                    log.warn("Failed to warm up a WebDriver session: {}", e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        log.info("Warmed up {} WebDriver sessions in {} ms", idleKits.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private WebDriverKit takeHealthyOrCreate() {
+        WebDriverKit kit;
+        while ((kit = idleKits.pollFirst()) != null) {
+            if (kit.isAlive()) {
+                return kit;
+            }
+            failedHealthChecks.incrementAndGet();
+            destroy(kit);
+        }
+        return createWebDriverKit();
+    }
+
+    // Memory is looked at on every idle check, and on release only once memoryCheckEveryPages pages were loaded since
+    // the last look, so sessions that are never idle at a check still get recycled when they grow
+    private boolean needsRecycling(WebDriverKit kit, boolean checkMemory) {
+        int pages = kit.getPagesLoaded().get();
+        if (pages >= maxPagesPerSession) {
+            return true;
+        }
+        if (!checkMemory && pages - kit.getPagesAtMemoryCheck() < memoryCheckEveryPages) {
+            return false;
+        }
+        kit.setPagesAtMemoryCheck(pages);
+        long rss = kit.residentSetSizeBytes();
+        return rss > maxRssMb * 1024 * 1024;
+    }
+
+    private WebDriverKit createWebDriverKit() {
+        ChromeOptions options = new ChromeOptions();
+        options.addArguments("--headless", "--disable-gpu", "--no-sandbox", "--disable-dev-shm-usage");
+        pageLoadProfile.configure(options);
+
+        File driverFile = driverResolver.resolve();
+        WebDriverKit kit;
+        try {
+            kit = startWebDriverKit(driverFile, options);
+        } catch (SessionNotCreatedException e) {
+            // A cached driver no longer matches the browser, typically after a browser update
+            File refreshed = driverResolver.refresh(driverFile);
+            if (refreshed.equals(driverFile)) {
+                throw e;
+            }
+            kit = startWebDriverKit(refreshed, options);
+        }
+        allKits.add(kit);
+        created.incrementAndGet();
+        return kit;
+    }
+
+    private WebDriverKit startWebDriverKit(File driverFile, ChromeOptions options) {
+        ChromeDriverService service = new ChromeDriverService.Builder()
+                .usingDriverExecutable(driverFile)
+                .usingAnyFreePort()
+                .build();
+        try {
+            WebDriver driver = new ChromeDriver(service, options);
+            WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(waitTimeoutSeconds));
+            return new WebDriverKit(driver, wait, service, pageLoadProfile);
+        } catch (RuntimeException e) {
+            service.stop();
+            throw e;
+        }
+    }
+
+    private void destroy(WebDriverKit kit) {
+        allKits.remove(kit);
+        try {
+            kit.quit();
+        } catch (Exception e) {
+            log.warn("Error quitting a WebDriver instance: {}", e.getMessage());
+        }
+    }
+}
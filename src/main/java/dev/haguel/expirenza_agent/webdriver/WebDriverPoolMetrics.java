@@ -0,0 +1,12 @@
+package dev.haguel.expirenza_agent.webdriver;
+
+public record WebDriverPoolMetrics(
+        int maxSize,
+        int idle,
+        int leased,
+        long created,
+        long recycled,
+        long failedHealthChecks,
+        long leases,
+        long totalLeaseWaitMillis
+) {}
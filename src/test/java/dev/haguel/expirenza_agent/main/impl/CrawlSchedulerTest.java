@@ -0,0 +1,139 @@
+package dev.haguel.expirenza_agent.main.impl;
+
+import dev.haguel.expirenza_agent.cluster.ShardCoordinator;
+import dev.haguel.expirenza_agent.cluster.ShardLeaseStore.ScheduleEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CrawlSchedulerTest {
+    private static final String URL = "https://example.com/r/1";
+
+    // The coordinator of a single node, which also reports every schedule it is given
+    private final ShardCoordinator shardCoordinator = mock(ShardCoordinator.class);
+    private final CrawlScheduler scheduler = new CrawlScheduler(shardCoordinator);
+
+    @BeforeEach
+    void configure() {
+        when(shardCoordinator.shardOf(anyString())).thenReturn(0);
+        when(shardCoordinator.isActive(anyInt())).thenReturn(true);
+        ReflectionTestUtils.setField(scheduler, "minIntervalSeconds", 60L);
+        ReflectionTestUtils.setField(scheduler, "initialIntervalSeconds", 180L);
+        ReflectionTestUtils.setField(scheduler, "maxIntervalSeconds", 400L);
+        ReflectionTestUtils.setField(scheduler, "retryDelaySeconds", 60L);
+    }
+
+    @Test
+    void unchangedMenusAreCrawledLessOftenUpToTheMaximum() {
+        scheduler.register(URL);
+
+        assertThat(crawlIntervals(42L, 42L, 42L, 42L)).containsExactly(180_000L, 270_000L, 400_000L, 400_000L);
+    }
+
+    @Test
+    void changedMenusAreCrawledMoreOftenDownToTheMinimum() {
+        scheduler.register(URL);
+
+        assertThat(crawlIntervals(1L, 2L, 3L, 4L)).containsExactly(180_000L, 90_000L, 60_000L, 60_000L);
+    }
+
+    @Test
+    void crawledUrlIsNotDueUntilItsIntervalHasPassed() {
+        scheduler.register(URL);
+
+        assertThat(scheduler.pollDue(10)).containsExactly(URL);
+        assertThat(scheduler.pollDue(10)).isEmpty();
+        assertThat(scheduler.getInFlightCount()).isEqualTo(1);
+
+        scheduler.complete(URL, 42L);
+
+        assertThat(scheduler.pollDue(10)).isEmpty();
+        assertThat(scheduler.getInFlightCount()).isZero();
+    }
+
+    @Test
+    void retryDelayDoublesWithEveryFailureAndHalfOfItIsRandom() {
+        for (int failures = 1; failures <= 3; failures++) {
+            long ceiling = 60_000L << (failures - 1);
+            for (int i = 0; i < 100; i++) {
+                assertThat(retryDelayMillis(failures)).isBetween(ceiling / 2, ceiling);
+            }
+        }
+        // Capped at the maximum interval, also where the shift would overflow
+        assertThat(retryDelayMillis(4)).isBetween(200_000L, 400_000L);
+        assertThat(retryDelayMillis(100)).isBetween(200_000L, 400_000L);
+    }
+
+    @Test
+    void failedUrlWaitsForItsRetryDelay() {
+        scheduler.register(URL);
+        scheduler.pollDue(10);
+
+        scheduler.fail(URL);
+
+        assertThat(scheduler.pollDue(10)).isEmpty();
+        assertThat(scheduler.getInFlightCount()).isZero();
+    }
+
+    @Test
+    void requeuedUrlIsDueRightAway() {
+        scheduler.register(URL);
+        scheduler.pollDue(10);
+
+        scheduler.requeue(URL);
+
+        assertThat(scheduler.pollDue(10)).containsExactly(URL);
+    }
+
+    @Test
+    void unlistedUrlsAreForgottenUnlessTheyAreInFlight() {
+        String crawling = "https://example.com/r/2";
+        String listed = "https://example.com/r/3";
+        scheduler.register(crawling);
+        assertThat(scheduler.pollDue(10)).containsExactly(crawling);
+        scheduler.register(URL);
+        scheduler.register(listed);
+
+        assertThat(scheduler.retainListed(listed::equals)).isEqualTo(1);
+
+        assertThat(scheduler.getTrackedCount()).isEqualTo(2);
+        assertThat(scheduler.pollDue(10)).containsExactly(listed);
+        // A forgotten URL the source lists again starts over
+        assertThat(scheduler.register(URL)).isTrue();
+    }
+
+    // Crawls the URL once per hash and returns the interval each crawl scheduled the next one with
+    private List<Long> crawlIntervals(long... contentHashes) {
+        List<Long> intervals = new ArrayList<>();
+        for (long contentHash : contentHashes) {
+            assertThat(scheduler.pollDue(1)).containsExactly(URL);
+            scheduler.complete(URL, contentHash);
+
+            ArgumentCaptor<Long> interval = ArgumentCaptor.forClass(Long.class);
+            verify(shardCoordinator, times(intervals.size() + 1)).recordSchedule(eq(URL), eq(0), anyLong(), interval.capture(), anyLong());
+            intervals.add(interval.getValue());
+
+            // The next crawl is brought forward the way a shard takeover would, keeping the interval and the hash
+            scheduler.restore(List.of(new ScheduleEntry(URL, 0, 0L, interval.getValue(), contentHash)));
+        }
+        return intervals;
+    }
+
+    private long retryDelayMillis(int consecutiveFailures) {
+        return ReflectionTestUtils.invokeMethod(scheduler, "retryDelayMillis", consecutiveFailures);
+    }
+}
@@ -0,0 +1,72 @@
+package dev.haguel.expirenza_agent.main.impl;
+
+import dev.haguel.expirenza_agent.main.ItemProducer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DistinctURLProducerTest {
+    private final PassSource source = new PassSource();
+    private final DistinctURLProducer producer = new DistinctURLProducer(source);
+
+    @Test
+    void repeatsWithinAPassAreDropped() {
+        source.pass("a", "b", "a", "c", "b");
+
+        assertThat(producer.produceBatch(10)).containsExactly("a", "b", "c");
+        assertThat(producer.getCompletedPasses()).isEqualTo(1);
+    }
+
+    @Test
+    void nextPassListsItsUrlsAgainAndForgetsTheOthers() {
+        source.pass("a", "b");
+        producer.produceBatch(10);
+        source.pass("b", "c");
+
+        assertThat(producer.produceBatch(10)).containsExactly("b", "c");
+        assertThat(producer.getCompletedPasses()).isEqualTo(2);
+        assertThat(producer.listedInLastPass("a")).isFalse();
+        assertThat(producer.listedInLastPass("b")).isTrue();
+        assertThat(producer.listedInLastPass("c")).isTrue();
+    }
+
+    @Test
+    void emptyPassListsNothing() {
+        source.pass("a");
+        producer.produceBatch(10);
+        source.pass();
+
+        assertThat(producer.produceBatch(10)).isEmpty();
+        assertThat(producer.getCompletedPasses()).isEqualTo(2);
+        assertThat(producer.listedInLastPass("a")).isFalse();
+    }
+
+    // Hands out one queued pass at a time and reports it complete once it is drained
+    private static class PassSource extends ItemProducer<Deque<String>, String> {
+        private boolean passing;
+
+        private PassSource() {
+            super(new ArrayDeque<>());
+        }
+
+        private void pass(String... urls) {
+            dataSource.addAll(List.of(urls));
+            passing = true;
+            passStarted();
+        }
+
+        @Override
+        public String produce() {
+            String url = dataSource.poll();
+            if (url == null && passing) {
+                passing = false;
+                passCompleted();
+            }
+            return url;
+        }
+    }
+}
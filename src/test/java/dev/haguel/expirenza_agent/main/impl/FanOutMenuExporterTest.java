@@ -0,0 +1,58 @@
+package dev.haguel.expirenza_agent.main.impl;
+
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import dev.haguel.expirenza_agent.main.BatchDataExporter;
+import dev.haguel.expirenza_agent.metrics.AgentMetrics;
+import dev.haguel.expirenza_agent.utils.ExecutionMode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FanOutMenuExporterTest {
+    private static final List<Restaurant> BATCH = List.of(Restaurant.builder().name("First").url("https://example.com/r/1").build());
+
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private FanOutMenuExporter exporter;
+
+    @AfterEach
+    void closeExporter() {
+        exporter.close();
+    }
+
+    @Test
+    void failingSecondarySinkDoesNotFailTheBatch() {
+        exporter = fanOut(sink("sheets", false), Map.of("jsonl", sink("jsonl", true), "csv", sink("csv", false)));
+
+        exporter.exportAll(BATCH);
+
+        assertThat(written).containsExactlyInAnyOrder("sheets", "jsonl", "csv");
+    }
+
+    @Test
+    void failingPrimarySinkFailsTheBatchOnceTheOthersAreDone() {
+        exporter = fanOut(sink("sheets", true), Map.of("jsonl", sink("jsonl", false)));
+
+        assertThatThrownBy(() -> exporter.exportAll(BATCH)).isInstanceOf(IllegalStateException.class).hasMessage("sheets failed");
+        assertThat(written).containsExactlyInAnyOrder("sheets", "jsonl");
+    }
+
+    private FanOutMenuExporter fanOut(BatchDataExporter<Restaurant> primary, Map<String, BatchDataExporter<Restaurant>> secondaries) {
+        return new FanOutMenuExporter("sheets", primary, secondaries, new AgentMetrics(new SimpleMeterRegistry()), ExecutionMode.PLATFORM);
+    }
+
+    private BatchDataExporter<Restaurant> sink(String name, boolean failing) {
+        return restaurants -> {
+            written.add(name);
+            if (failing) {
+                throw new IllegalStateException(name + " failed");
+            }
+        };
+    }
+}
@@ -0,0 +1,45 @@
+package dev.haguel.expirenza_agent.main.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MenuPageExtractorTest {
+    private final MenuPageExtractor extractor = new MenuPageExtractor();
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "120 ₴          | 120",
+            "120.50 грн     | 120.50",
+            "99,5           | 99.5",
+            "від 99 грн     | 99",
+            "1 234,50 ₴     | 1234.50",
+            "1,234.50       | 1234.50",
+            "1.234          | 1234",
+            "1'234'567      | 1234567",
+            "12.5 / 0.5 л   | 12.5",
+            "1.2345         | 1",
+    })
+    void takesTheFirstNumber(String text, String price) {
+        assertThat(extractor.parsePrice(text)).isEqualByComparingTo(price);
+    }
+
+    @Test
+    void understandsNonBreakingSpacesAsThousandsSeparators() {
+        assertThat(extractor.parsePrice("1\u00a0234\u202f567 ₴")).isEqualByComparingTo("1234567");
+    }
+
+    @Test
+    void textWithoutAPriceIsZero() {
+        assertThat(extractor.parsePrice(null)).isZero();
+        assertThat(extractor.parsePrice("")).isZero();
+        assertThat(extractor.parsePrice("ціну уточнюйте")).isZero();
+    }
+
+    @Test
+    void numberTooLongForALongIsZero() {
+        assertThat(extractor.parsePrice("1234567890123456789")).isZero();
+    }
+}
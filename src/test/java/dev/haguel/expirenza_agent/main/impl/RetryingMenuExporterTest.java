@@ -0,0 +1,160 @@
+package dev.haguel.expirenza_agent.main.impl;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import dev.haguel.expirenza_agent.main.BatchDataExporter;
+import dev.haguel.expirenza_agent.main.ExportListener;
+import dev.haguel.expirenza_agent.metrics.AgentMetrics;
+import dev.haguel.expirenza_agent.resilience.ResilienceRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetryingMenuExporterTest {
+    private static final long ONE_HOUR_MILLIS = 3_600_000L;
+
+    private final AgentMetrics agentMetrics = new AgentMetrics(new SimpleMeterRegistry());
+    private final ResilienceRegistry resilienceRegistry = new ResilienceRegistry(agentMetrics);
+    private final RecordingExporter delegate = new RecordingExporter();
+    private final Set<String> heldUrls = new HashSet<>();
+    private final RecordingListener listener = new RecordingListener();
+
+    @BeforeEach
+    void configure() {
+        // Backoff up to an hour, so neither the timer nor the next batch retries before the test closes the exporter
+        ReflectionTestUtils.setField(resilienceRegistry, "maxAttempts", 4);
+        ReflectionTestUtils.setField(resilienceRegistry, "baseDelayMillis", ONE_HOUR_MILLIS);
+        ReflectionTestUtils.setField(resilienceRegistry, "maxDelayMillis", ONE_HOUR_MILLIS);
+    }
+
+    @Test
+    void successfulBatchLeavesNothingQueued() throws IOException {
+        RetryingMenuExporter exporter = exporter(10);
+
+        exporter.exportAll(List.of(restaurant("First", "v1")));
+        exporter.close();
+
+        assertThat(exporter.getPendingCount()).isZero();
+        assertThat(delegate.attempts).containsExactly(List.of("First v1"));
+        assertThat(listener.outcomes).containsExactly("exported First");
+    }
+
+    @Test
+    void failedBatchIsWrittenAgainWithTheLatestResults() throws IOException {
+        RetryingMenuExporter exporter = exporter(10);
+        delegate.failures = 1;
+
+        // The queue owns the retry, so the failure is not passed on
+        exporter.exportAll(List.of(restaurant("First", "v1"), restaurant("Second", "v1")));
+        // Still backing off, so the batch only joins the queue
+        exporter.exportAll(List.of(restaurant("First", "v2")));
+        assertThat(exporter.getPendingCount()).isEqualTo(2);
+        assertThat(delegate.attempts).hasSize(1);
+        assertThat(listener.outcomes).isEmpty();
+
+        exporter.close();
+
+        assertThat(exporter.getPendingCount()).isZero();
+        assertThat(delegate.attempts).containsExactly(
+                List.of("First v1", "Second v1"),
+                List.of("Second v1", "First v2"));
+        assertThat(listener.outcomes).containsExactly("exported Second", "exported First");
+    }
+
+    @Test
+    void fullQueueDropsTheOldestRestaurants() throws IOException {
+        RetryingMenuExporter exporter = exporter(2);
+        delegate.failures = 1;
+
+        exporter.exportAll(List.of(restaurant("First", "v1"), restaurant("Second", "v1")));
+        exporter.exportAll(List.of(restaurant("Third", "v1")));
+        exporter.close();
+
+        assertThat(delegate.attempts).last().isEqualTo(List.of("Second v1", "Third v1"));
+        assertThat(listener.outcomes).containsExactly("failed First", "exported Second", "exported Third");
+    }
+
+    @Test
+    void restaurantsOfLostShardsAreNotRetried() throws IOException {
+        RetryingMenuExporter exporter = exporter(10);
+        delegate.failures = 1;
+
+        exporter.exportAll(List.of(restaurant("First", "v1"), restaurant("Second", "v1")));
+        heldUrls.remove(url("First"));
+        exporter.close();
+
+        assertThat(delegate.attempts).last().isEqualTo(List.of("Second v1"));
+        assertThat(listener.outcomes).containsExactly("discarded First", "exported Second");
+    }
+
+    @Test
+    void restaurantsStillFailingWhenClosedAreReportedAsFailed() throws IOException {
+        RetryingMenuExporter exporter = exporter(10);
+        delegate.failures = Integer.MAX_VALUE;
+
+        exporter.exportAll(List.of(restaurant("First", "v1")));
+        exporter.close();
+
+        assertThat(exporter.getPendingCount()).isZero();
+        assertThat(delegate.attempts).hasSize(2);
+        assertThat(listener.outcomes).containsExactly("failed First");
+    }
+
+    private RetryingMenuExporter exporter(int maxPending) {
+        return new RetryingMenuExporter("test", delegate, resilienceRegistry, agentMetrics, maxPending, heldUrls::contains, listener);
+    }
+
+    // The only dish is named after the version, so the batches show which result of a restaurant was written
+    private Restaurant restaurant(String name, String version) {
+        heldUrls.add(url(name));
+        return Restaurant.builder().name(name).url(url(name)).dishes(List.of(Dish.builder().name(version).build())).build();
+    }
+
+    private static String url(String name) {
+        return "https://example.com/" + name;
+    }
+
+    private static class RecordingListener implements ExportListener<Restaurant> {
+        private final List<String> outcomes = new ArrayList<>();
+
+        @Override
+        public void exported(Restaurant restaurant) {
+            outcomes.add("exported " + restaurant.getName());
+        }
+
+        @Override
+        public void failed(Restaurant restaurant, RuntimeException e) {
+            outcomes.add("failed " + restaurant.getName());
+        }
+
+        @Override
+        public void discarded(Restaurant restaurant) {
+            outcomes.add("discarded " + restaurant.getName());
+        }
+    }
+
+    private static class RecordingExporter implements BatchDataExporter<Restaurant> {
+        private final List<List<String>> attempts = new ArrayList<>();
+        private int failures;
+
+        @Override
+        public void exportAll(List<Restaurant> restaurants) {
+            attempts.add(restaurants.stream()
+                    .map(restaurant -> restaurant.getName() + " " + restaurant.getDishes().get(0).getName())
+                    .toList());
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("Sink unavailable");
+            }
+        }
+    }
+}
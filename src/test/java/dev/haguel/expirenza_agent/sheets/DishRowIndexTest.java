@@ -0,0 +1,76 @@
+package dev.haguel.expirenza_agent.sheets;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.DishCategory;
+import dev.haguel.expirenza_agent.entity.DishKey;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DishRowIndexTest {
+    private final DishRowIndex index = new DishRowIndex();
+
+    @Test
+    void findsDishesByAllThreeParts() {
+        index.putIfAbsent("Drinks", "Hot", "Tea", 2);
+        index.putIfAbsent("Drinks", "Cold", "Tea", 3);
+
+        assertThat(index.get("Drinks", "Hot", "Tea")).isEqualTo(2);
+        assertThat(index.get("Drinks", "Cold", "Tea")).isEqualTo(3);
+        assertThat(index.get("Soups", "Hot", "Tea")).isEqualTo(DishRowIndex.NO_ROW);
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    @Test
+    void keepsTheFirstRowOfADuplicate() {
+        assertThat(index.putIfAbsent("Drinks", "", "Tea", 2)).isTrue();
+        assertThat(index.putIfAbsent("Drinks", "", "Tea", 7)).isFalse();
+
+        assertThat(index.get("Drinks", "", "Tea")).isEqualTo(2);
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    void missingPartsMatchEmptyStrings() {
+        index.putIfAbsent("Drinks", null, "Tea", 4);
+        Dish dish = Dish.builder().name("Tea").dishCategory(new DishCategory("Drinks", null)).build();
+
+        assertThat(index.get("Drinks", "", "Tea")).isEqualTo(4);
+        assertThat(index.get(dish)).isEqualTo(4);
+        assertThat(index.get(DishKey.of(dish))).isEqualTo(4);
+        assertThat(index.get(Dish.builder().name("Tea").build())).isEqualTo(DishRowIndex.NO_ROW);
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        for (int row = 1; row <= 1000; row++) {
+            index.putIfAbsent("Category " + row % 7, "", "Dish " + row, row);
+        }
+
+        assertThat(index.size()).isEqualTo(1000);
+        for (int row = 1; row <= 1000; row++) {
+            assertThat(index.get("Category " + row % 7, "", "Dish " + row)).isEqualTo(row);
+        }
+    }
+
+    @Test
+    void clearForgetsEveryDish() {
+        for (int row = 1; row <= 100; row++) {
+            index.putIfAbsent("Mains", "", "Dish " + row, row);
+        }
+
+        index.clear(2);
+        index.putIfAbsent("Mains", "", "Dish 1", 5);
+
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.get("Mains", "", "Dish 1")).isEqualTo(5);
+        assertThat(index.get("Mains", "", "Dish 2")).isEqualTo(DishRowIndex.NO_ROW);
+    }
+
+    @Test
+    void rejectsRowsBeforeTheFirst() {
+        assertThatThrownBy(() -> index.putIfAbsent("Drinks", "", "Tea", DishRowIndex.NO_ROW))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
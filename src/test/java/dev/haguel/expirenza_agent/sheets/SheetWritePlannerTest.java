@@ -0,0 +1,127 @@
+package dev.haguel.expirenza_agent.sheets;
+
+import com.google.api.services.sheets.v4.model.ValueRange;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SheetWritePlannerTest {
+    private final SheetWritePlanner planner = new SheetWritePlanner(Long.MAX_VALUE);
+
+    @Test
+    void adjacentRowsBecomeOneRange() {
+        SheetWritePlan sheet = new SheetWritePlan("Menu");
+        sheet.write(2, row("Tea", "30"));
+        sheet.write(3, row("Coffee", "45"));
+        sheet.write(4, row("Water", "10"));
+
+        List<List<ValueRange>> requests = planner.plan(List.of(sheet));
+
+        assertThat(requests).hasSize(1);
+        assertThat(ranges(requests.get(0))).containsExactly("'Menu'!A2:B4");
+        assertThat(requests.get(0).get(0).getValues()).hasSize(3);
+    }
+
+    @Test
+    void shortGapOfKnownRowsIsRewrittenToJoinTwoBlocks() {
+        SheetWritePlan sheet = new SheetWritePlan("Menu");
+        sheet.write(2, row("Tea", "30"));
+        sheet.write(5, row("Water", "10"));
+        sheet.setUnchangedRows(row -> row("Unchanged " + row, "0"));
+
+        List<ValueRange> request = planner.plan(List.of(sheet)).get(0);
+
+        assertThat(ranges(request)).containsExactly("'Menu'!A2:B5");
+        assertThat(request.get(0).getValues()).containsExactly(
+                row("Tea", "30"), row("Unchanged 3", "0"), row("Unchanged 4", "0"), row("Water", "10"));
+    }
+
+    @Test
+    void gapIsKeptWhenItIsLongOrItsRowsAreUnknown() {
+        SheetWritePlan longGap = new SheetWritePlan("Long");
+        longGap.write(2, row("Tea"));
+        longGap.write(6, row("Water"));
+        longGap.setUnchangedRows(row -> row("Unchanged"));
+
+        SheetWritePlan unknownGap = new SheetWritePlan("Unknown");
+        unknownGap.write(2, row("Tea"));
+        unknownGap.write(4, row("Water"));
+
+        List<List<ValueRange>> requests = planner.plan(List.of(longGap, unknownGap));
+
+        assertThat(requests).hasSize(1);
+        assertThat(ranges(requests.get(0))).containsExactly(
+                "'Long'!A2:A2", "'Long'!A6:A6", "'Unknown'!A2:A2", "'Unknown'!A4:A4");
+    }
+
+    @Test
+    void gapIsKeptWhenBridgingItWouldExceedTheRequestLimit() {
+        // A range costs 64 bytes and each of these rows 18, so the bridged block of four rows would not fit
+        SheetWritePlanner smallRequests = new SheetWritePlanner(100);
+        SheetWritePlan sheet = new SheetWritePlan("Menu");
+        sheet.write(1, row("0123456789"));
+        sheet.write(4, row("0123456789"));
+        sheet.setUnchangedRows(row -> row("0123456789"));
+
+        List<List<ValueRange>> requests = smallRequests.plan(List.of(sheet));
+
+        assertThat(requests.stream().flatMap(List::stream).map(ValueRange::getRange))
+                .containsExactly("'Menu'!A1:A1", "'Menu'!A4:A4");
+    }
+
+    @Test
+    void blockLargerThanOneRequestIsSplit() {
+        // A range costs 64 bytes and each of these rows 18, so two rows fill a request of 100 bytes
+        SheetWritePlanner smallRequests = new SheetWritePlanner(100);
+        SheetWritePlan sheet = new SheetWritePlan("Menu");
+        for (int row = 1; row <= 5; row++) {
+            sheet.write(row, row("0123456789"));
+        }
+
+        List<List<ValueRange>> requests = smallRequests.plan(List.of(sheet));
+
+        assertThat(requests).hasSize(3);
+        assertThat(requests).allSatisfy(request -> assertThat(request).hasSize(1));
+        assertThat(requests.stream().map(request -> request.get(0).getRange()))
+                .containsExactly("'Menu'!A1:A2", "'Menu'!A3:A4", "'Menu'!A5:A5");
+    }
+
+    @Test
+    void rangesOfSeveralSheetsShareARequestWhileTheyFit() {
+        SheetWritePlanner smallRequests = new SheetWritePlanner(200);
+        List<SheetWritePlan> sheets = new ArrayList<>();
+        for (String name : List.of("First", "Second", "Third")) {
+            SheetWritePlan sheet = new SheetWritePlan(name);
+            sheet.write(1, row("0123456789"));
+            sheets.add(sheet);
+        }
+
+        List<List<ValueRange>> requests = smallRequests.plan(sheets);
+
+        assertThat(requests.stream().map(SheetWritePlannerTest::ranges))
+                .containsExactly(List.of("'First'!A1:A1", "'Second'!A1:A1"), List.of("'Third'!A1:A1"));
+    }
+
+    @Test
+    void rangeCoversTheWidestRowAndQuotesTheSheetName() {
+        SheetWritePlan sheet = new SheetWritePlan("Chef's menu");
+        sheet.write(1, row("Tea"));
+        sheet.write(2, new ArrayList<>(Collections.nCopies(28, "x")));
+
+        List<ValueRange> request = planner.plan(List.of(sheet)).get(0);
+
+        assertThat(ranges(request)).containsExactly("'Chef''s menu'!A1:AB2");
+    }
+
+    private static List<Object> row(Object... cells) {
+        return List.of(cells);
+    }
+
+    private static List<String> ranges(List<ValueRange> request) {
+        return request.stream().map(ValueRange::getRange).toList();
+    }
+}
@@ -0,0 +1,85 @@
+package dev.haguel.expirenza_agent.sink;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.DishCategory;
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JdbcMenuSinkTest {
+    // Kept open for the whole test, so the in-memory database outlives the sink's connection
+    private final String url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+    private final JdbcMenuSink sink = new JdbcMenuSink(url, "sa", "");
+
+    @AfterEach
+    void closeSink() throws SQLException {
+        sink.close();
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+    }
+
+    @Test
+    void removedDishIsDeletedByTheNextBatchRightAway() throws SQLException {
+        sink.exportAll(List.of(restaurant(dish("Tea", "30"), dish("Coffee", "45"))));
+        sink.exportAll(List.of(restaurant(dish("Tea", "30"))));
+
+        assertThat(prices()).containsOnlyKeys("Tea");
+    }
+
+    @Test
+    void pricesKeepTheirScale() throws SQLException {
+        sink.exportAll(List.of(restaurant(dish("Tea", "30.125"), dish("Coffee", "45"))));
+
+        Map<String, BigDecimal> prices = prices();
+        assertThat(prices.get("Tea")).isEqualByComparingTo("30.125");
+        assertThat(prices.get("Coffee")).isEqualByComparingTo("45");
+    }
+
+    @Test
+    void restartedSinkStillDeletesRemovedDishes() throws SQLException {
+        sink.exportAll(List.of(restaurant(dish("Tea", "30"), dish("Coffee", "45"))));
+        sink.close();
+
+        JdbcMenuSink restarted = new JdbcMenuSink(url, "sa", "");
+        restarted.exportAll(List.of(restaurant(dish("Coffee", "45"))));
+        restarted.close();
+
+        assertThat(prices()).containsOnlyKeys("Coffee");
+    }
+
+    private Map<String, BigDecimal> prices() throws SQLException {
+        Map<String, BigDecimal> prices = new LinkedHashMap<>();
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT name, price FROM menu_dishes ORDER BY name")) {
+            while (resultSet.next()) {
+                prices.put(resultSet.getString(1), resultSet.getBigDecimal(2));
+            }
+        }
+        return prices;
+    }
+
+    private static Restaurant restaurant(Dish... dishes) {
+        return Restaurant.builder().name("Cafe").url("https://example.com/r/1").dishes(new ArrayList<>(List.of(dishes))).build();
+    }
+
+    private static Dish dish(String name, String price) {
+        return Dish.builder().name(name).dishCategory(new DishCategory("Drinks", null)).price(new BigDecimal(price)).build();
+    }
+}
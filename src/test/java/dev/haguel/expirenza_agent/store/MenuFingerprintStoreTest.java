@@ -0,0 +1,75 @@
+package dev.haguel.expirenza_agent.store;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.DishCategory;
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import dev.haguel.expirenza_agent.store.MenuFingerprintStore.MenuDiff;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MenuFingerprintStoreTest {
+    private static final Restaurant FIRST = restaurant("First", "https://example.com/r/1");
+    private static final Restaurant SECOND = restaurant("Second", "https://example.com/r/2");
+
+    @TempDir
+    Path directory;
+
+    private MenuFingerprintStore store;
+
+    @BeforeEach
+    void openStore() throws IOException {
+        store = new MenuFingerprintStore();
+        ReflectionTestUtils.setField(store, "path", directory.resolve("fingerprints.mv.db").toString());
+        store.init();
+    }
+
+    @AfterEach
+    void closeStore() {
+        store.cleanup();
+    }
+
+    @Test
+    void committedMenuIsUnchanged() {
+        MenuDiff first = store.diff(FIRST);
+        assertThat(first.firstExport()).isTrue();
+        assertThat(first.changedDishes()).hasSize(2);
+
+        store.commit(FIRST, first);
+
+        MenuDiff second = store.diff(FIRST);
+        assertThat(second.unchanged()).isTrue();
+        assertThat(second.firstExport()).isFalse();
+    }
+
+    @Test
+    void forgetDropsOnlyMatchingRestaurants() {
+        store.commit(FIRST, store.diff(FIRST));
+        store.commit(SECOND, store.diff(SECOND));
+
+        assertThat(store.forget(url -> url.endsWith("/1"))).isEqualTo(1);
+
+        MenuDiff forgotten = store.diff(FIRST);
+        assertThat(forgotten.unchanged()).isFalse();
+        assertThat(forgotten.firstExport()).isTrue();
+        assertThat(forgotten.changedDishes()).hasSize(2);
+        assertThat(forgotten.removedDishes()).isEmpty();
+        assertThat(store.diff(SECOND).unchanged()).isTrue();
+    }
+
+    private static Restaurant restaurant(String name, String url) {
+        return Restaurant.builder().name(name).url(url).dishes(List.of(
+                Dish.builder().name("Borscht").dishCategory(new DishCategory("Soups", null)).price(new BigDecimal("120")).build(),
+                Dish.builder().name("Tea").dishCategory(new DishCategory("Drinks", null)).price(new BigDecimal("30")).build()
+        )).build();
+    }
+}
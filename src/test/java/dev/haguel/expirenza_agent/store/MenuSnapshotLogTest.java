@@ -0,0 +1,90 @@
+package dev.haguel.expirenza_agent.store;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.DishCategory;
+import dev.haguel.expirenza_agent.entity.Restaurant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MenuSnapshotLogTest {
+    private static final String FIRST_URL = "https://example.com/r/1";
+    private static final String SECOND_URL = "https://example.com/r/2";
+
+    @TempDir
+    Path directory;
+
+    private MenuSnapshotLog log;
+
+    @BeforeEach
+    void openLog() throws IOException {
+        log = new MenuSnapshotLog();
+        ReflectionTestUtils.setField(log, "path", directory.toString());
+        ReflectionTestUtils.setField(log, "segmentSizeMb", 1);
+        ReflectionTestUtils.setField(log, "maxSizeMb", 2);
+        log.init();
+    }
+
+    @AfterEach
+    void closeLog() throws IOException {
+        log.cleanup();
+    }
+
+    @Test
+    void restaurantsSharingANameAreAppendedSeparately() throws IOException {
+        assertThat(log.append(restaurant(FIRST_URL, "30", "40"))).isTrue();
+        assertThat(log.append(restaurant(SECOND_URL, "30", "40"))).isTrue();
+        assertThat(log.append(restaurant(FIRST_URL, "30", "40"))).isFalse();
+        assertThat(log.append(restaurant(FIRST_URL, "32", "40"))).isTrue();
+    }
+
+    @Test
+    void latestVersionsAreRebuiltFromTheSegments() throws IOException {
+        log.append(restaurant(FIRST_URL, "30", "40"));
+        log.append(restaurant(FIRST_URL, "32", "40"));
+        log.cleanup();
+        openLog();
+
+        assertThat(log.append(restaurant(FIRST_URL, "32", "40"))).isFalse();
+        assertThat(log.append(restaurant(FIRST_URL, "30", "40"))).isTrue();
+    }
+
+    @Test
+    void oldestSegmentsAreDeletedBeyondTheMaximumSize() throws IOException {
+        // Every version takes about a fifth of a segment, so a dozen of them fill more than the two segments kept
+        String description = "x".repeat(200 * 1024);
+        for (int i = 0; i < 12; i++) {
+            assertThat(log.append(restaurant(FIRST_URL, String.valueOf(i), "40", description))).isTrue();
+        }
+
+        assertThat(log.getSegmentCount()).isEqualTo(2);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).hasSize(2);
+        }
+        // The latest version is still known, even where its segment was deleted
+        assertThat(log.append(restaurant(FIRST_URL, "11", "40", description))).isFalse();
+    }
+
+    private static Restaurant restaurant(String url, String hotTeaPrice, String icedTeaPrice) {
+        return restaurant(url, hotTeaPrice, icedTeaPrice, null);
+    }
+
+    private static Restaurant restaurant(String url, String hotTeaPrice, String icedTeaPrice, String description) {
+        return Restaurant.builder().name("Cafe").url(url).dishes(List.of(
+                Dish.builder().name("Tea").dishCategory(new DishCategory("Drinks", "Hot")).price(new BigDecimal(hotTeaPrice))
+                        .description(description).build(),
+                Dish.builder().name("Tea").dishCategory(new DishCategory("Drinks", "Cold")).price(new BigDecimal(icedTeaPrice)).build()
+        )).build();
+    }
+}
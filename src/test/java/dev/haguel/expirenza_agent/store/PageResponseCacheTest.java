@@ -0,0 +1,78 @@
+package dev.haguel.expirenza_agent.store;
+
+import dev.haguel.expirenza_agent.metrics.AgentMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PageResponseCacheTest {
+    // Twelve pages are more than the two megabytes of live records a four megabyte cache keeps
+    private static final int PAGE_COUNT = 12;
+    private static final String TITLE = "x".repeat(256 * 1024);
+
+    @TempDir
+    Path directory;
+
+    private PageResponseCache cache;
+
+    @BeforeEach
+    void openCache() throws IOException {
+        cache = open();
+    }
+
+    @AfterEach
+    void closeCache() {
+        cache.cleanup();
+    }
+
+    @Test
+    void evictedPagesStayEvictedAfterARestart() throws IOException {
+        // The first page is read all along, so it outlives the pages written next to it in the first segment
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            cache.put(key(i), page(i));
+            cache.get(key(0));
+        }
+        List<String> cached = cachedKeys();
+        assertThat(cached).contains(key(0)).doesNotContain(key(1));
+
+        cache.cleanup();
+        cache = open();
+
+        assertThat(cachedKeys()).isEqualTo(cached);
+        assertThat(cache.get(key(PAGE_COUNT - 1))).get().extracting(PageResponseCache.CachedPage::etag).isEqualTo("etag-" + (PAGE_COUNT - 1));
+    }
+
+    private PageResponseCache open() throws IOException {
+        PageResponseCache opened = new PageResponseCache(new AgentMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(opened, "enabled", true);
+        ReflectionTestUtils.setField(opened, "path", directory.toString());
+        ReflectionTestUtils.setField(opened, "segmentSizeMb", 1);
+        ReflectionTestUtils.setField(opened, "maxSizeMb", 4);
+        opened.init();
+        return opened;
+    }
+
+    private List<String> cachedKeys() {
+        return IntStream.range(0, PAGE_COUNT).mapToObj(PageResponseCacheTest::key)
+                .filter(key -> cache.get(key).isPresent())
+                .toList();
+    }
+
+    private static String key(int page) {
+        return "https://example.com/r/" + page;
+    }
+
+    private static PageResponseCache.CachedPage page(int page) {
+        return new PageResponseCache.CachedPage("etag-" + page, null, page, TITLE, List.of(), List.of());
+    }
+}
@@ -0,0 +1,66 @@
+package dev.haguel.expirenza_agent.store;
+
+import dev.haguel.expirenza_agent.entity.Dish;
+import dev.haguel.expirenza_agent.entity.DishCategory;
+import dev.haguel.expirenza_agent.entity.PageCategory;
+import dev.haguel.expirenza_agent.utils.MenuFingerprints;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SnapshotCodecTest {
+    // Covers every field the codec turns from null into a default value
+    private static final List<Dish> DISHES = List.of(
+            Dish.builder().name("Borscht").dishCategory(new DishCategory("Soups", null)).description(null).price(new BigDecimal("120.50")).build(),
+            Dish.builder().name("Varenyky").dishCategory(new DishCategory("Mains", "Dumplings")).description("With cherries").price(null).build(),
+            Dish.builder().name("Water").dishCategory(null).description("").price(new BigDecimal("0.000")).build()
+    );
+
+    private final SnapshotCodec codec = new SnapshotCodec();
+
+    @Test
+    void pageRoundTripKeepsMenuHash() {
+        PageResponseCache.CachedPage page = new PageResponseCache.CachedPage("\"etag\"", null, 42L, "Restaurant",
+                List.of(new PageCategory("Soups", "https://example.com/r/1/c/0")), DISHES);
+
+        ByteBuffer payload = ByteBuffer.wrap(codec.encode("key", page));
+        assertThat(SnapshotCodec.decodeKey(payload)).isEqualTo("key");
+        PageResponseCache.CachedPage decoded = SnapshotCodec.decodePage(payload);
+
+        assertThat(decoded.etag()).isEqualTo("\"etag\"");
+        assertThat(decoded.lastModified()).isNull();
+        assertThat(decoded.bodyHash()).isEqualTo(42L);
+        assertThat(decoded.title()).isEqualTo("Restaurant");
+        assertThat(decoded.links()).isEqualTo(page.links());
+        assertThat(MenuFingerprints.menuHash(decoded.dishes())).isEqualTo(MenuFingerprints.menuHash(DISHES));
+        for (int i = 0; i < DISHES.size(); i++) {
+            assertThat(MenuFingerprints.dishHash(decoded.dishes().get(i))).isEqualTo(MenuFingerprints.dishHash(DISHES.get(i)));
+        }
+    }
+
+    @Test
+    void snapshotRoundTripKeepsMenuHash() {
+        long menuHash = MenuFingerprints.menuHash(DISHES);
+        MenuSnapshotLog.MenuSnapshot snapshot = new MenuSnapshotLog.MenuSnapshot("Restaurant", "https://example.com/r/1",
+                1_700_000_000_000L, menuHash, DISHES);
+
+        MenuSnapshotLog.MenuSnapshot decoded = SnapshotCodec.decode(ByteBuffer.wrap(codec.encode(snapshot)));
+
+        assertThat(decoded.restaurantName()).isEqualTo("Restaurant");
+        assertThat(decoded.capturedAtMillis()).isEqualTo(1_700_000_000_000L);
+        assertThat(decoded.menuHash()).isEqualTo(menuHash);
+        assertThat(MenuFingerprints.menuHash(decoded.dishes())).isEqualTo(menuHash);
+    }
+
+    @Test
+    void absentFieldsHashLikeTheirDefaults() {
+        Dish absent = Dish.builder().name("Tea").dishCategory(new DishCategory("Drinks", null)).build();
+        Dish defaults = Dish.builder().name("Tea").dishCategory(new DishCategory("Drinks", "")).description("").price(BigDecimal.ZERO).build();
+
+        assertThat(MenuFingerprints.dishHash(absent)).isEqualTo(MenuFingerprints.dishHash(defaults));
+    }
+}